@@ -1,8 +1,32 @@
 package hu.finominfo.scheduler;
 
+import hu.finominfo.scheduler.people.People;
+import hu.finominfo.scheduler.scheduler.FairnessSimulation;
+import hu.finominfo.scheduler.scheduler.ScheduleRepair;
+import hu.finominfo.scheduler.scheduler.ScheduleSnapshot;
+import hu.finominfo.scheduler.scheduler.ShiftSwap;
+import hu.finominfo.scheduler.scheduler.WhatIfAnalysis;
+import hu.finominfo.scheduler.util.HistoryBackfill;
+import hu.finominfo.scheduler.util.KeyValueStore;
+import hu.finominfo.scheduler.util.OnCallServer;
+import hu.finominfo.scheduler.util.ScheduleDiff;
+import hu.finominfo.scheduler.util.ScheduleImporter;
+import hu.finominfo.scheduler.util.SolveClient;
+import hu.finominfo.scheduler.util.SolveWorker;
+import hu.finominfo.scheduler.util.YearWorkbookExporter;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 
+import java.net.InetSocketAddress;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDate;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Collectors;
+
 
 public class Main {
 
@@ -10,8 +34,59 @@ public class Main {
 
     public static void main(String[] args) throws Exception {
         try {
-            MainTask mainTask = new MainTask(args);
-            mainTask.make();
+            String command = args.length > 0 ? args[0].toLowerCase() : "";
+            switch (command) {
+                case "export":
+                    export(args);
+                    break;
+                case "year":
+                    if (args.length < 2) {
+                        throw new IllegalArgumentException("Usage: year YYYY [directory]");
+                    }
+                    new YearWorkbookExporter(Paths.get(args.length > 2 ? args[2] : "."), Integer.parseInt(args[1])).write();
+                    break;
+                case "import":
+                    if (args.length < 2) {
+                        throw new IllegalArgumentException("Usage: import schedule-YYYY-M.xlsx [directory]");
+                    }
+                    if (args.length > 2) {
+                        new ScheduleImporter(Paths.get(args[1]), Paths.get(args[2])).run();
+                    } else {
+                        new ScheduleImporter(Paths.get(args[1])).run();
+                    }
+                    break;
+                case "swap":
+                case "handover":
+                    swap(command, args);
+                    break;
+                case "repair":
+                    repair(args);
+                    break;
+                case "whatif":
+                    whatIf(args);
+                    break;
+                case "simulate":
+                    simulate(args);
+                    break;
+                case "serve":
+                    serve(args);
+                    break;
+                case "teams":
+                    new MultiTeamTask(Arrays.copyOfRange(args, 1, args.length)).make();
+                    break;
+                case "worker":
+                    worker(args);
+                    break;
+                case "coordinate":
+                    coordinate(args);
+                    break;
+                case "backfill":
+                    new HistoryBackfill(Paths.get(args.length > 1 ? args[1] : ".")).run();
+                    break;
+                default:
+                    MainTask mainTask = new MainTask(args);
+                    mainTask.make();
+            }
         } catch (Exception e) {
             logger.error(e);
             //String message = "";
@@ -22,5 +97,136 @@ public class Main {
         }
     }
 
+    // swap YYYY-M name1 day1 name2 day2
+    // handover YYYY-M from to day
+    private static void swap(String command, String[] args) throws Exception {
+        boolean swap = command.equals("swap");
+        if (args.length < (swap ? 6 : 5)) {
+            throw new IllegalArgumentException(swap
+                    ? "Usage: swap YYYY-M name1 day1 name2 day2"
+                    : "Usage: handover YYYY-M from to day");
+        }
+        String[] yearMonth = args[1].split("-");
+        LocalDate date = LocalDate.of(Integer.parseInt(yearMonth[0]), Integer.parseInt(yearMonth[1]), 1);
+        Path path = Paths.get(ScheduleSnapshot.fileName(date, "bin"));
+        String first = args[2].replaceAll("_", " ");
+        List<ShiftSwap.Move> moves = swap
+                ? List.of(
+                        new ShiftSwap.Move(Integer.parseInt(args[3]), first, args[4].replaceAll("_", " ")),
+                        new ShiftSwap.Move(Integer.parseInt(args[5]), args[4].replaceAll("_", " "), first))
+                : List.of(new ShiftSwap.Move(Integer.parseInt(args[4]), first, args[3].replaceAll("_", " ")));
+        ShiftSwap.Result result = ShiftSwap.apply(path, moves, new MainTask(date, Paths.get(""))::publish);
+        logger.info(result);
+        if (result.isFeasible()) {
+            logger.info(path + " and its outputs were updated.");
+        }
+    }
+
+    // repair YYYY-M [radius]
+    private static void repair(String[] args) throws Exception {
+        if (args.length < 2) {
+            throw new IllegalArgumentException("Usage: repair YYYY-M [radius]");
+        }
+        String[] yearMonth = args[1].split("-");
+        LocalDate date = LocalDate.of(Integer.parseInt(yearMonth[0]), Integer.parseInt(yearMonth[1]), 1);
+        int radius = args.length > 2 ? Integer.parseInt(args[2]) : ScheduleRepair.DEFAULT_RADIUS;
+        Path path = Paths.get(ScheduleSnapshot.fileName(date, "bin"));
+        ScheduleSnapshot previous = ScheduleSnapshot.read(path);
+        ScheduleSnapshot repaired = new ScheduleRepair(previous, new People().getPeople().values(), radius).repair();
+        ScheduleDiff diff = ScheduleDiff.compare(previous, repaired);
+        // the same outputs as a solved month, the changes file included
+        new MainTask(date, Paths.get("")).publish(repaired);
+        logger.info(path + " was repaired, " + diff.getChanges().size() + " assignments changed.");
+    }
+
+    // whatif YYYY-M variants.txt [seed], a line of the file is title: config line; config line
+    private static void whatIf(String[] args) throws Exception {
+        if (args.length < 3) {
+            throw new IllegalArgumentException("Usage: whatif YYYY-M variants.txt [seed]");
+        }
+        String[] yearMonth = args[1].split("-");
+        LocalDate date = LocalDate.of(Integer.parseInt(yearMonth[0]), Integer.parseInt(yearMonth[1]), 1);
+        List<WhatIfAnalysis.Variant> variants = Files.readAllLines(Paths.get(args[2])).stream()
+                .map(String::trim)
+                .filter(line -> !line.isEmpty() && !line.startsWith("#"))
+                .map(WhatIfAnalysis.Variant::parse)
+                .collect(Collectors.toList());
+        long seed = args.length > 3 ? Long.parseLong(args[3]) : System.currentTimeMillis();
+        People people = new People();
+        for (WhatIfAnalysis.Outcome outcome : new WhatIfAnalysis(date, people.getConfigs(), people.getNames(), seed).run(variants)) {
+            logger.info(outcome);
+        }
+    }
+
+    // simulate YYYY years [leaveProbability] [seed]
+    private static void simulate(String[] args) throws Exception {
+        if (args.length < 3) {
+            throw new IllegalArgumentException("Usage: simulate YYYY years [leaveProbability] [seed]");
+        }
+        int year = Integer.parseInt(args[1]);
+        int years = Integer.parseInt(args[2]);
+        double leaveProbability = args.length > 3 ? Double.parseDouble(args[3]) : 0.3;
+        long seed = args.length > 4 ? Long.parseLong(args[4]) : System.currentTimeMillis();
+        int step = Math.max(1, years / 10);
+        FairnessSimulation.Statistics statistics = new FairnessSimulation(new People().getConfigs(), year, leaveProbability, seed)
+                .run(years, progress -> {
+                    if (progress.getYears() / step != (progress.getYears() - 1) / step) {
+                        logger.info(progress.getYears() + " of " + years + " years simulated");
+                    }
+                });
+        Path path = Paths.get("simulation-" + year + ".csv");
+        Files.write(path, statistics.toCsv().getBytes("UTF-8"), StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING);
+        logger.info(path + " was written.");
+    }
+
+    // serve [port] [directory], runs until the process is stopped
+    private static void serve(String[] args) throws Exception {
+        int port = args.length > 1 ? Integer.parseInt(args[1]) : 8080;
+        OnCallServer server = new OnCallServer(Paths.get(args.length > 2 ? args[2] : "."), port);
+        Runtime.getRuntime().addShutdownHook(new Thread(server::close));
+        server.start();
+        Thread.currentThread().join();
+    }
+
+    // worker [port] [bind address], the loopback interface by default
+    private static void worker(String[] args) throws Exception {
+        SolveWorker worker = new SolveWorker(args.length > 2 ? args[2] : SolveWorker.DEFAULT_BIND_ADDRESS,
+                args.length > 1 ? Integer.parseInt(args[1]) : 7070);
+        Runtime.getRuntime().addShutdownHook(new Thread(worker::close));
+        worker.start();
+        Thread.currentThread().join();
+    }
+
+    // coordinate host:port,host:port [YYMM]
+    private static void coordinate(String[] args) throws Exception {
+        if (args.length < 2) {
+            throw new IllegalArgumentException("Usage: coordinate host:port[,host:port...] [YYMM]");
+        }
+        List<InetSocketAddress> workers = Arrays.stream(args[1].split(","))
+                .map(String::trim)
+                .filter(str -> !str.isEmpty())
+                .map(SolveClient::parseAddress)
+                .collect(Collectors.toList());
+        new MultiTeamTask(Arrays.copyOfRange(args, 2, args.length), workers).make();
+    }
+
+    // export csv|json|text fromYear toYear [name]
+    private static void export(String[] args) throws Exception {
+        if (args.length < 4) {
+            throw new IllegalArgumentException("Usage: export csv|json|text fromYear toYear [name]");
+        }
+        KeyValueStore.DumpFormat format = KeyValueStore.DumpFormat.valueOf(args[1].toUpperCase());
+        int fromYear = Integer.parseInt(args[2]);
+        int toYear = Integer.parseInt(args[3]);
+        String name = args.length > 4 ? args[4].replaceAll("_", " ") : null;
+        Path path = Paths.get("allData-" + fromYear + "-" + toYear + "." + format.getExtension());
+        KeyValueStore keyValueStore = new KeyValueStore();
+        try {
+            keyValueStore.dump(path, format, fromYear, toYear, name);
+        } finally {
+            keyValueStore.close();
+        }
+        logger.info(path + " was written.");
+    }
 
 }
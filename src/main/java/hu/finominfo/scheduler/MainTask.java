@@ -1,178 +1,152 @@
 package hu.finominfo.scheduler;
 
+import hu.finominfo.scheduler.common.Globals;
 import hu.finominfo.scheduler.people.People;
-import hu.finominfo.scheduler.people.Type;
+import hu.finominfo.scheduler.scheduler.ScheduleSnapshot;
 import hu.finominfo.scheduler.scheduler.Scheduler;
 import hu.finominfo.scheduler.util.ExcelExporter;
+import hu.finominfo.scheduler.util.HistoryIndex;
+import hu.finominfo.scheduler.util.KeyValueStore;
+import hu.finominfo.scheduler.util.MonthStatistics;
+import hu.finominfo.scheduler.util.OutputPipeline;
+import hu.finominfo.scheduler.util.ScheduleDiff;
+import hu.finominfo.scheduler.util.ScheduleExporter;
+import hu.finominfo.scheduler.util.StatisticsWriter;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 
-import java.io.File;
 import java.io.IOException;
 import java.nio.file.Files;
+import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.nio.file.StandardOpenOption;
 import java.sql.SQLException;
 import java.time.LocalDate;
 import java.time.LocalDateTime;
 import java.util.*;
-import java.util.concurrent.atomic.AtomicInteger;
 
 public class MainTask {
 
     private static final Logger LOGGER = LogManager.getLogger(MainTask.class);
-    private final String[] args;
+    private final Path directory;
     private volatile LocalDate localDate;
 
     public MainTask(String[] args) {
-        this.args = args;
+        this(args, Paths.get(""));
     }
 
-    public void make() throws IOException, SQLException {
+    /**
+     * @param directory where the outputs, the history and the database of the roster are
+     */
+    public MainTask(String[] args, Path directory) {
+        this(getDate(args), directory);
+    }
+
+    /**
+     * Publishes a given month, e.g. a changed or repaired one.
+     */
+    public MainTask(LocalDate date, Path directory) {
+        this.directory = directory;
+        this.localDate = date.withDayOfMonth(1);
+    }
+
+    /**
+     * @return the month of the YYMM argument, the next month without it
+     */
+    public static LocalDate getDate(String[] args) {
         if (args != null && args.length == 1) {
             // LOGGER.info(args[0]);
-            localDate = LocalDate.of(
+            return LocalDate.of(
                     2000 + Integer.valueOf(args[0].substring(0, 2)),
                     Integer.valueOf(args[0].substring(2)),
                     1);
-        } else {
-            localDate = LocalDateTime.now().toLocalDate().plusMonths(1);
         }
+        return LocalDateTime.now().toLocalDate().plusMonths(1).withDayOfMonth(1);
+    }
 
+    public void make() throws IOException, SQLException {
         People people = new People();
         Scheduler scheduler = new Scheduler(people.getPeople(), localDate);
-        writeMonth(scheduler, people);
-        ExcelExporter excelExporter = new ExcelExporter(scheduler, people, localDate);
-        excelExporter.writeMonthToExcel();
-
-        Map<String, AtomicInteger> allScheduledAmount = new HashMap<>();
-        LocalDate previousDate = localDate;
-        while (previousDate.getYear() == localDate.getYear()) {
-            String fileName2 = "schedule-" +
-                    previousDate.getYear() +
-                    "-" +
-                    previousDate.getMonthValue() +
-                    ".csv";
-            File file = new File(fileName2);
-            if (file.exists() && !file.isDirectory()) {
-                String content = new String(Files.readAllBytes(Paths.get(fileName2)), "UTF-8");
-                String lines[] = content.split("\\r?\\n");
-                Arrays
-                        .asList(lines)
-                        .stream()
-                        .forEach(line -> {
-                            String[] split = line.split(",");
-                            String name = split[0].trim();
-                            AtomicInteger value = allScheduledAmount.get(name);
-                            if (value == null) {
-                                value = new AtomicInteger(0);
-                                allScheduledAmount.put(name, value);
-                            }
-                            value.addAndGet(split.length - 1);
-                        });
+        publish(ScheduleSnapshot.of(scheduler, people));
+    }
+
+    /**
+     * Writes all the outputs of the solved month at the same time.
+     */
+    public void publish(ScheduleSnapshot snapshot) throws IOException {
+        // the previous version is read into the heap, the bin output replaces the file
+        Path binPath = directory.resolve(ScheduleSnapshot.fileName(localDate, "bin"));
+        ScheduleSnapshot previous = Files.exists(binPath) ? ScheduleSnapshot.read(binPath) : null;
+        // the csv files are imported before the csv output of the month is written again
+        HistoryIndex historyIndex = new HistoryIndex(directory.resolve("schedule-history.idx"));
+        if (!historyIndex.exists()) {
+            historyIndex.importCsv();
+        }
+
+        // the snapshot is immutable, every output reads it at the same time
+        StatisticsWriter statisticsWriter = new StatisticsWriter(new KeyValueStore(directory));
+        OutputPipeline pipeline = new OutputPipeline();
+        try {
+            pipeline.add("bin", () -> snapshot.write(binPath));
+            if (previous != null) {
+                pipeline.add("changes", () -> writeChanges(previous, snapshot));
+            }
+            pipeline.add("csv", () -> writeText(ScheduleSnapshot.fileName(localDate, "csv"), snapshot.renderCsv()));
+            if (Globals.getInstance().isWriteTxt()) {
+                pipeline.add("txt", () -> writeText(ScheduleSnapshot.fileName(localDate, "txt"), snapshot.renderTxt()));
+            }
+            for (String format : Globals.getInstance().getExportFormats()) {
+                ScheduleExporter exporter = ScheduleExporter.create(format);
+                pipeline.add(format.trim(), () -> exporter.export(snapshot, directory));
             }
-            previousDate = previousDate.minusMonths(1);
+            pipeline.add("statistics", statisticsWriter.submit(new MonthStatistics(snapshot)));
+            pipeline.add("allData.txt", statisticsWriter.printAll(localDate.getYear()));
+            pipeline.add("history index", () -> updateHistoryIndex(historyIndex, snapshot));
+            pipeline.await();
+        } finally {
+            pipeline.close();
+            statisticsWriter.close();
         }
+    }
+
+    /**
+     * Writes schedule-YYYY-M-changes.csv (and .xlsx if asked) with the assignments that differ from the
+     * previously published version of the month.
+     */
+    private void writeChanges(ScheduleSnapshot previous, ScheduleSnapshot snapshot) throws IOException {
+        ScheduleDiff diff = ScheduleDiff.compare(previous, snapshot);
+        String fileName = "schedule-" + localDate.getYear() + "-" + localDate.getMonthValue() + "-changes";
+        diff.write(directory.resolve(fileName + ".csv"));
+        if (Globals.getInstance().isChangesExcel()) {
+            ExcelExporter.writeChanges(diff, directory.resolve(fileName + ".xlsx"));
+        }
+        LOGGER.info(diff.getChanges().size() + " assignments changed since the previous version.");
+    }
+
+    private void updateHistoryIndex(HistoryIndex historyIndex, ScheduleSnapshot snapshot) throws IOException {
+        Map<String, Integer> monthAmount = new HashMap<>();
+        snapshot.getNames().forEach(name -> monthAmount.put(name, snapshot.getScheduledDays(name).size()));
+        historyIndex.appendMonth(localDate.getYear(), localDate.getMonthValue(), monthAmount);
+        Map<String, Integer> allScheduledAmount = historyIndex.sumForYear(localDate.getYear(), localDate.getMonthValue());
 
         StringBuilder toFile3 = new StringBuilder();
-        allScheduledAmount
+        new TreeMap<>(allScheduledAmount)
                 .entrySet()
                 .forEach(entry -> {
-                    if (entry.getValue().get() > 0) {
-                        toFile3.append(entry.getKey() + " - " + entry.getValue().get());
+                    if (entry.getValue() > 0) {
+                        toFile3.append(entry.getKey() + " - " + entry.getValue());
                         toFile3.append(System.lineSeparator());
                     }
                 });
-        // LOGGER.info(toFile3.toString());
-        String fileName3 = "schedule-" + localDate.getYear() + ".txt";
-        // Files.write(
-        // Paths.get(fileName3),
-        // toFile3.toString().getBytes("UTF-8"),
-        // StandardOpenOption.CREATE);
+        writeText("schedule-" + localDate.getYear() + ".txt", toFile3.toString());
     }
 
-    public void writeMonth(Scheduler scheduler, People people)
-            throws IOException {
-        final StringBuilder toTxtFile = new StringBuilder();
-        scheduler
-                .getScheduled()
-                .forEach((key, value) -> {
-                    if (value.size() == 2) {
-                        Iterator<String> iterator = value.iterator();
-                        String name1 = iterator.next();
-                        String name2 = iterator.next();
-                        boolean firstFo = Type.isFirstFo(
-                                people.getPeople().get(name1).getType(key),
-                                people.getPeople().get(name2).getType(key));
-                        String names = firstFo
-                                ? name1 + " - " + name2
-                                : name2 + " - " + name1;
-                        toTxtFile.append(key + " -> " + names);
-                        if (scheduler.getHolidays().contains(key)) {
-                            toTxtFile.append(" - Official Holiday");
-                        }
-                        toTxtFile.append(System.lineSeparator());
-                    }
-                });
-        scheduler
-                .getScheduled()
-                .entrySet()
-                .stream()
-                .forEach(entry -> entry
-                        .getValue()
-                        .stream()
-                        .forEach(name -> {
-                            people.getPeople().get(name).getNumOfScheduled().incrementAndGet();
-                            people.getPeople().get(name).getWantedDays().add(entry.getKey());
-                        }));
-        final StringBuilder toFile = new StringBuilder();
-        people
-                .getPeople()
-                .entrySet()
-                .stream().sorted(Comparator.comparing(e -> {
-                    return e.getKey();
-                }))
-                .forEach(entry -> {
-                    toTxtFile.append(
-                            entry.getKey() + " - " + entry.getValue().getNumOfScheduled().get());
-                    toTxtFile.append(System.lineSeparator());
-                    toFile.append(entry.getKey().replaceAll(" ", "_"));
-                    entry
-                            .getValue()
-                            .getWantedDays()
-                            .stream().sorted()
-                            .forEach(value -> toFile.append(" w" + value));
-                    entry
-                            .getValue()
-                            .getWantedDays()
-                            .stream().sorted()
-                            .forEach(value -> toFile
-                                    .append(" " + getFoSign(value, scheduler, entry.getValue().getName()) + value));
-                    toFile.append(System.lineSeparator());
-                });
-        toTxtFile.append(toFile);
-        String fileNameTxt = "schedule-" +
-                localDate.getYear() +
-                "-" +
-                localDate.getMonthValue() +
-                ".txt";
-        // Files.write(
-        // Paths.get(fileNameTxt),
-        // toTxtFile.toString().getBytes("UTF-8"),
-        // StandardOpenOption.CREATE);
-        String fileName = "schedule-" +
-                localDate.getYear() +
-                "-" +
-                localDate.getMonthValue() +
-                ".csv";
+    private void writeText(String fileName, String text) throws IOException {
         Files.write(
-                Paths.get(fileName),
-                toFile.toString().getBytes("UTF-8"),
-                StandardOpenOption.CREATE);
-    }
-
-    private String getFoSign(int day, Scheduler scheduler, String name) {
-        return scheduler.getFoNames().get(day).equals(name) ? "f" : "b";
+                directory.resolve(fileName),
+                text.getBytes("UTF-8"),
+                StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING);
     }
 
 }
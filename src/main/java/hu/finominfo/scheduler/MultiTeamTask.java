@@ -0,0 +1,359 @@
+package hu.finominfo.scheduler;
+
+import hu.finominfo.scheduler.common.Globals;
+import hu.finominfo.scheduler.people.ConfigParser;
+import hu.finominfo.scheduler.people.People;
+import hu.finominfo.scheduler.people.Person;
+import hu.finominfo.scheduler.people.PersonConfig;
+import hu.finominfo.scheduler.scheduler.AvailabilityRegistry;
+import hu.finominfo.scheduler.scheduler.ScheduleSnapshot;
+import hu.finominfo.scheduler.scheduler.Scheduler;
+import hu.finominfo.scheduler.scheduler.SolveRequest;
+import hu.finominfo.scheduler.util.SolveClient;
+import hu.finominfo.scheduler.util.SolveWorker;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.InetSocketAddress;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.sql.SQLException;
+import java.time.LocalDate;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+
+/**
+ * Solves the month of every team of the teams directory: teams/&lt;name&gt;/config.csv, with the outputs, the
+ * history and the database of the team in the same directory. The teams are solved at the same time, each with
+ * its own Scheduler and people; the calendar is shared. A person may be in several teams, but not on duty in
+ * two of them on the same or on adjacent days: the Schedulers reserve every duty in a shared
+ * {@link AvailabilityRegistry} while they pick the people, so a day taken by another team is never a candidate.
+ * A team which can not be solved with the days left to it releases its days and is solved again after the
+ * others, in the order of the names.
+ * <p>
+ * With workers the teams are solved by {@link SolveWorker}s of other JVMs or hosts: a team is sent when the teams
+ * ranked before it with a common person are solved, together with the days of those people in them. The outputs
+ * and the history are written here.
+ */
+public class MultiTeamTask {
+
+    private static final Logger LOGGER = LogManager.getLogger(MultiTeamTask.class);
+
+    private static final int ATTEMPTS = 5;
+    private static final long WORKER_WAIT_SECONDS = 1;
+
+    private static class Team {
+        private final String name;
+        private final Path directory;
+        private final People people;
+        private AvailabilityRegistry.Booking booking;
+        private volatile ScheduleSnapshot snapshot;
+
+        private Team(String name, Path directory, People people) {
+            this.name = name;
+            this.directory = directory;
+            this.people = people;
+        }
+    }
+
+    private final String[] args;
+    private final Path teamsDirectory;
+    private final LocalDate localDate;
+    private final List<InetSocketAddress> workers;
+
+    public MultiTeamTask(String[] args) {
+        this(args, Collections.emptyList());
+    }
+
+    /**
+     * @param workers the addresses of the {@link SolveWorker}s, the teams are solved here if there is none
+     */
+    public MultiTeamTask(String[] args, List<InetSocketAddress> workers) {
+        this.args = args;
+        this.teamsDirectory = Paths.get(Globals.getInstance().getTeamsDirectory());
+        this.localDate = MainTask.getDate(args);
+        this.workers = workers;
+    }
+
+    public void make() throws IOException, SQLException {
+        List<Team> teams = discover();
+        if (teams.isEmpty()) {
+            throw new RuntimeException("There is no team in " + teamsDirectory.toAbsolutePath());
+        }
+        LOGGER.info("Solving " + localDate.getYear() + "-" + localDate.getMonthValue() + " for the teams "
+                + teams.stream().map(team -> team.name).collect(Collectors.toList()));
+        ExecutorService executor = Executors.newFixedThreadPool(
+                Math.min(teams.size(), Runtime.getRuntime().availableProcessors()));
+        try {
+            if (workers.isEmpty()) {
+                solve(teams, executor);
+            } else {
+                solveRemotely(teams);
+            }
+            if (!findConflicts(teams).isEmpty()) {
+                throw new RuntimeException("Cross-team conflicts: " + describe(teams));
+            }
+            join(teams.stream()
+                    .map(team -> CompletableFuture.runAsync(() -> publish(team), executor))
+                    .collect(Collectors.toList()));
+        } finally {
+            executor.shutdownNow();
+        }
+        LOGGER.info(teams.size() + " teams were solved and written.");
+    }
+
+    /**
+     * Solves the teams at the same time with a shared registry; the teams which fail are solved again one by one.
+     */
+    private void solve(List<Team> teams, ExecutorService executor) {
+        Set<String> names = new HashSet<>();
+        teams.forEach(team -> names.addAll(team.people.getNames()));
+        AvailabilityRegistry registry = new AvailabilityRegistry(localDate.lengthOfMonth(), names);
+        teams.forEach(team -> team.booking = registry.open(team.name));
+        Random random = new Random();
+        Map<Team, RuntimeException> failed = new ConcurrentHashMap<>();
+        join(teams.stream()
+                .map(team -> {
+                    long seed = random.nextLong();
+                    return CompletableFuture.runAsync(() -> solve(team, seed, failed), executor);
+                })
+                .collect(Collectors.toList()));
+        for (Team team : teams) {
+            for (int attempt = 1; failed.containsKey(team); attempt++) {
+                if (attempt >= ATTEMPTS) {
+                    throw failed.get(team);
+                }
+                LOGGER.info("Solving " + team.name + " again: " + failed.get(team).getMessage());
+                failed.remove(team);
+                solve(team, random.nextLong(), failed);
+            }
+        }
+    }
+
+    private List<Team> discover() throws IOException, SQLException {
+        List<Team> teams = new ArrayList<>();
+        if (!Files.isDirectory(teamsDirectory)) {
+            return teams;
+        }
+        List<Path> directories = new ArrayList<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(teamsDirectory, Files::isDirectory)) {
+            stream.forEach(directories::add);
+        }
+        directories.sort(Comparator.comparing(path -> path.getFileName().toString()));
+        // every team has its own database, the configs are parsed at the same time
+        Map<Path, Set<String>> namesOfConfigs = new LinkedHashMap<>();
+        Map<Path, Path> directoriesOfConfigs = new HashMap<>();
+        for (Path directory : directories) {
+            Path config = directory.resolve(Globals.getInstance().getConfigFile());
+            if (Files.isRegularFile(config)) {
+                namesOfConfigs.put(config, People.namesOf(directory));
+                directoriesOfConfigs.put(config, directory);
+            }
+        }
+        for (Map.Entry<Path, List<PersonConfig>> entry : ConfigParser.parseAll(namesOfConfigs).entrySet()) {
+            Path directory = directoriesOfConfigs.get(entry.getKey());
+            teams.add(new Team(directory.getFileName().toString(), directory,
+                    new People(entry.getValue(), namesOfConfigs.get(entry.getKey()))));
+        }
+        return teams;
+    }
+
+    /**
+     * Solves the team with the days left to it by the other teams; on failure its days are released.
+     */
+    private void solve(Team team, long seed, Map<Team, RuntimeException> failed) {
+        Map<String, Person> people = new HashMap<>();
+        for (PersonConfig config : team.people.getConfigs()) {
+            people.put(config.getName(), config.toPerson());
+        }
+        try {
+            Scheduler scheduler = new Scheduler(people, localDate, seed, team.booking);
+            team.snapshot = ScheduleSnapshot.create(scheduler.getDate(), scheduler.getScheduled(),
+                    scheduler.getFoNames(), scheduler.getHolidays(), scheduler.getSaturdays(),
+                    scheduler.getSundays(), people.values());
+        } catch (RuntimeException e) {
+            team.booking.releaseAll();
+            failed.put(team, new RuntimeException(team.name + ": " + e.getMessage(), e));
+        }
+    }
+
+    /**
+     * Sends every team to a worker once the teams ranked before it with a common person are solved. A worker
+     * solves as many teams at the same time as it has threads; the teams of a lost worker go to the others.
+     */
+    private void solveRemotely(List<Team> teams) throws IOException {
+        List<SolveClient> clients = new ArrayList<>();
+        BlockingQueue<SolveClient> idle = new LinkedBlockingQueue<>();
+        try {
+            for (InetSocketAddress address : workers) {
+                SolveClient first = new SolveClient(address);
+                clients.add(first);
+                for (int i = 1; i < first.getThreads(); i++) {
+                    clients.add(new SolveClient(address));
+                }
+                LOGGER.info("Worker " + address + " solves " + first.getThreads() + " teams at the same time");
+            }
+            idle.addAll(clients);
+            AtomicInteger alive = new AtomicInteger(clients.size());
+            ExecutorService executor = Executors.newFixedThreadPool(Math.min(teams.size(), idle.size()));
+            try {
+                Map<Team, CompletableFuture<Void>> solved = new HashMap<>();
+                Random random = new Random();
+                for (Team team : teams) {
+                    List<CompletableFuture<Void>> before = new ArrayList<>();
+                    for (Team other : teams) {
+                        if (other == team) {
+                            break;
+                        }
+                        if (!Collections.disjoint(other.people.getPeople().keySet(), team.people.getPeople().keySet())) {
+                            before.add(solved.get(other));
+                        }
+                    }
+                    long seed = random.nextLong();
+                    solved.put(team, CompletableFuture.allOf(before.toArray(new CompletableFuture<?>[0]))
+                            .thenRunAsync(() -> solveRemotely(team, teams, seed, idle, alive), executor));
+                }
+                join(new ArrayList<>(solved.values()));
+            } finally {
+                executor.shutdownNow();
+            }
+        } finally {
+            clients.forEach(MultiTeamTask::close);
+        }
+    }
+
+    private void solveRemotely(Team team, List<Team> teams, long seed, BlockingQueue<SolveClient> idle,
+                               AtomicInteger alive) {
+        List<PersonConfig> configs = new ArrayList<>(team.people.getConfigs());
+        Map<String, Long> busy = busyBefore(team, teams);
+        Random random = new Random(seed);
+        for (int attempt = 1; ; attempt++) {
+            SolveClient client = take(idle, alive);
+            try {
+                team.snapshot = client.solve(new SolveRequest(team.name, localDate, random.nextLong(), configs, busy));
+                idle.add(client);
+                LOGGER.info(team.name + " was solved by " + client.getAddress());
+                return;
+            } catch (IOException e) {
+                LOGGER.warn("Worker " + client.getAddress() + " is lost: " + e.getMessage());
+                alive.decrementAndGet();
+                close(client);
+                attempt--;
+            } catch (RuntimeException e) {
+                idle.add(client);
+                if (attempt >= ATTEMPTS) {
+                    throw new RuntimeException(team.name + ": " + e.getMessage(), e);
+                }
+                LOGGER.info("Solving " + team.name + " again: " + e.getMessage());
+            }
+        }
+    }
+
+    private static SolveClient take(BlockingQueue<SolveClient> idle, AtomicInteger alive) {
+        try {
+            SolveClient client;
+            while ((client = idle.poll(WORKER_WAIT_SECONDS, TimeUnit.SECONDS)) == null) {
+                if (alive.get() == 0) {
+                    throw new RuntimeException("Every worker is lost");
+                }
+            }
+            return client;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Interrupted while waiting for a worker", e);
+        }
+    }
+
+    private static void close(SolveClient client) {
+        try {
+            client.close();
+        } catch (IOException e) {
+            LOGGER.debug("Worker connection can not be closed: " + e.getMessage());
+        }
+    }
+
+    /**
+     * @return the day masks of the duties of the people of the team in the teams ranked before it
+     */
+    private Map<String, Long> busyBefore(Team team, List<Team> teams) {
+        Map<String, Long> busy = new HashMap<>();
+        for (Team other : teams) {
+            if (other == team) {
+                break;
+            }
+            if (other.snapshot == null) {
+                continue;
+            }
+            for (String name : other.snapshot.getNames()) {
+                if (team.people.getPeople().containsKey(name)) {
+                    long mask = 0;
+                    for (int day : other.snapshot.getScheduledDays(name)) {
+                        mask |= 1L << day;
+                    }
+                    busy.merge(name, mask, (first, second) -> first | second);
+                }
+            }
+        }
+        return busy;
+    }
+
+    /**
+     * @return the teams with a person on duty on or next to a day when they are on duty in a team ranked before
+     */
+    private Map<Team, Map<String, Long>> findConflicts(List<Team> teams) {
+        Map<Team, Map<String, Long>> conflicts = new LinkedHashMap<>();
+        for (Team team : teams) {
+            Map<String, Long> busy = busyBefore(team, teams);
+            busy.forEach((name, mask) -> {
+                long own = 0;
+                for (int day : team.snapshot.getScheduledDays(name)) {
+                    own |= 1L << day;
+                }
+                // the day before and after a duty of another team are not free either
+                long conflict = own & (mask | mask << 1 | mask >>> 1);
+                if (conflict != 0) {
+                    conflicts.computeIfAbsent(team, key -> new TreeMap<>()).put(name, conflict);
+                }
+            });
+        }
+        return conflicts;
+    }
+
+    private String describe(List<Team> teams) {
+        StringBuilder sb = new StringBuilder();
+        findConflicts(teams).forEach((team, names) -> names.forEach((name, mask) -> {
+            List<Integer> days = new ArrayList<>();
+            for (long rest = mask; rest != 0; rest &= rest - 1) {
+                days.add(Long.numberOfTrailingZeros(rest));
+            }
+            sb.append(sb.length() == 0 ? "" : ", ").append(name).append(" in ").append(team.name).append(" on ").append(days);
+        }));
+        return sb.toString();
+    }
+
+    private void publish(Team team) {
+        try {
+            new MainTask(args, team.directory).publish(team.snapshot);
+            LOGGER.info(team.name + " was written into " + team.directory);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static void join(List<CompletableFuture<Void>> futures) {
+        try {
+            CompletableFuture.allOf(futures.toArray(new CompletableFuture<?>[0])).join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw e;
+        }
+    }
+}
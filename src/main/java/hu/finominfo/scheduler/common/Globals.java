@@ -1,5 +1,8 @@
 package hu.finominfo.scheduler.common;
 
+import java.time.LocalTime;
+import java.util.List;
+
 /**
  * Created by kalman.kovacs@globessey.local on 2017.12.18.
  */
@@ -15,6 +18,15 @@ public class Globals {
 
     private final String configFile = "config.csv";
     private final String resultFile = "result.csv";
+    private final String teamsDirectory = System.getProperty("scheduler.teams", "teams");
+    private final String calendarFile = System.getProperty("scheduler.calendar", "calendar.txt");
+    private final boolean streamingExcel = Boolean.getBoolean("scheduler.excel.streaming");
+    private final boolean excelFormulas = Boolean.getBoolean("scheduler.excel.formulas");
+    private final boolean changesExcel = Boolean.getBoolean("scheduler.changes.excel");
+    private final boolean writeTxt = Boolean.getBoolean("scheduler.txt");
+    private final LocalTime handoverTime = LocalTime.parse(System.getProperty("scheduler.handover", "00:00"));
+    private final int solveTimeoutSeconds = Integer.getInteger("scheduler.solve.timeout", 600);
+    private final List<String> exportFormats = List.of(System.getProperty("scheduler.export", "xlsx").split(","));
 
     public String getConfigFile() {
         return configFile;
@@ -23,4 +35,56 @@ public class Globals {
     public String getResultFile() {
         return resultFile;
     }
+
+    /**
+     * The directory of the team directories of the teams command, each with its own config.csv.
+     */
+    public String getTeamsDirectory() {
+        return teamsDirectory;
+    }
+
+    /**
+     * The transferred workdays, bridge days and extra holidays, read if the file exists.
+     */
+    public String getCalendarFile() {
+        return calendarFile;
+    }
+
+    public boolean isStreamingExcel() {
+        return streamingExcel;
+    }
+
+    public boolean isExcelFormulas() {
+        return excelFormulas;
+    }
+
+    public boolean isChangesExcel() {
+        return changesExcel;
+    }
+
+    public boolean isWriteTxt() {
+        return writeTxt;
+    }
+
+    /**
+     * When the duty of a day starts, e.g. -Dscheduler.handover=08:00; before it the duty of the previous day
+     * is still on.
+     */
+    public LocalTime getHandoverTime() {
+        return handoverTime;
+    }
+
+    /**
+     * How long a solve worker may work on a month before it is taken as lost, e.g. -Dscheduler.solve.timeout=600
+     */
+    public int getSolveTimeoutSeconds() {
+        return solveTimeoutSeconds;
+    }
+
+    /**
+     * The formats written after a month is solved, e.g. -Dscheduler.export=xlsx,json,ics
+     */
+    public List<String> getExportFormats() {
+        return exportFormats;
+    }
 }
@@ -0,0 +1,32 @@
+package hu.finominfo.scheduler.people;
+
+/**
+ * An error in a config file, with the place of the wrong token.
+ */
+public class ConfigParseException extends RuntimeException {
+
+    private static final long serialVersionUID = 1L;
+
+    private final String source;
+    private final int line;
+    private final int column;
+
+    public ConfigParseException(String source, int line, int column, String message) {
+        super(source + ":" + line + ":" + column + ": " + message);
+        this.source = source;
+        this.line = line;
+        this.column = column;
+    }
+
+    public String getSource() {
+        return source;
+    }
+
+    public int getLine() {
+        return line;
+    }
+
+    public int getColumn() {
+        return column;
+    }
+}
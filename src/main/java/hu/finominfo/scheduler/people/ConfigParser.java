@@ -0,0 +1,361 @@
+package hu.finominfo.scheduler.people;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.stream.Collectors;
+
+/**
+ * Reads a config file in one pass over its characters. A line is a name (with _ for spaces) and its
+ * expressions separated by spaces or commas; the expressions are compiled directly into the masks and numbers of
+ * a {@link PersonConfig}:
+ * <ul>
+ * <li>nofo, hend, hweek, hmon, htue, hwen, hthu, hfri, wtue: the keywords of the config how-to</li>
+ * <li>u, p, s, v and a number: the wanted holidays, Fridays, Saturdays and Sundays</li>
+ * <li>w, h, f, b and a day or a range (12-14): wanted, hated, IMS1 only and IMS2 only days</li>
+ * <li>+ and - and a number: the manual day difference</li>
+ * <li>r and a number: the free days wanted between two duties (r2)</li>
+ * <li>m, a number and a length: at most that many duties in any days of that length (m2-7)</li>
+ * </ul>
+ * A name which is not in the database is only accepted with the newperson command after it. Every error tells
+ * the line and the column of the wrong expression.
+ */
+public class ConfigParser {
+
+    private static final String[] KEYWORDS =
+            {"nofo", "hend", "hweek", "hmon", "htue", "hwen", "hthu", "hfri", "wtue"};
+    private static final int[] KEYWORD_FLAGS = {PersonConfig.NOFO, PersonConfig.HATES_WEEKENDS,
+            PersonConfig.HATES_WEEKDAYS, PersonConfig.HATES_MONDAYS, PersonConfig.HATES_TUESDAYS,
+            PersonConfig.HATES_WEDNESDAYS, PersonConfig.HATES_THURSDAYS, PersonConfig.HATES_FRIDAYS,
+            PersonConfig.WANTS_TUESDAYS};
+    private static final String NEW_PERSON = "newperson";
+    private static final int MAX_DAY = 63;
+    private static final int MAX_WINDOW = 31;
+
+    private final String source;
+    private final String content;
+    private final Collection<String> names;
+    private final Map<String, PersonConfig> base;
+    private final List<PersonConfig> configs = new ArrayList<>();
+    private int position;
+    private int line = 1;
+    private int lineStart;
+    private int tokenStart;
+    private int tokenEnd;
+
+    private ConfigParser(String source, String content, Collection<String> names, Map<String, PersonConfig> base) {
+        this.source = source;
+        this.content = content;
+        this.names = names;
+        this.base = base;
+    }
+
+    /**
+     * @param source the name of the config in the error messages
+     * @param names the names of the database
+     */
+    public static List<PersonConfig> parse(String source, String content, Collection<String> names) {
+        return parse(source, content, names, Map.of());
+    }
+
+    /**
+     * Parses changes of a parsed config: the expressions of a person of the base are added to a copy of their
+     * config, the base itself is not changed.
+     *
+     * @return the changed and the new people
+     */
+    public static List<PersonConfig> parse(String source, String content, Collection<String> names,
+                                           Map<String, PersonConfig> base) {
+        ConfigParser parser = new ConfigParser(source, content, names, base);
+        parser.parse();
+        return parser.configs;
+    }
+
+    public static List<PersonConfig> parse(Path path, Collection<String> names) throws IOException {
+        return parse(path.toString(), new String(Files.readAllBytes(path), StandardCharsets.UTF_8), names);
+    }
+
+    /**
+     * Parses the config files of several teams at the same time.
+     */
+    public static Map<Path, List<PersonConfig>> parseAll(Collection<Path> paths, Collection<String> names)
+            throws IOException {
+        Set<String> nameSet = names instanceof Set ? (Set<String>) names : new HashSet<>(names);
+        Map<Path, Set<String>> namesOfPaths = new LinkedHashMap<>();
+        paths.forEach(path -> namesOfPaths.put(path, nameSet));
+        return parseAll(namesOfPaths);
+    }
+
+    /**
+     * Parses the config files of several teams at the same time, every file with the names of its own database.
+     *
+     * @return the configs in the order of the given paths
+     */
+    public static Map<Path, List<PersonConfig>> parseAll(Map<Path, ? extends Collection<String>> namesOfPaths)
+            throws IOException {
+        try {
+            return namesOfPaths.entrySet().parallelStream().collect(Collectors.toMap(Map.Entry::getKey, entry -> {
+                try {
+                    return parse(entry.getKey(), entry.getValue());
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            }, (first, second) -> first, LinkedHashMap::new));
+        } catch (RuntimeException e) {
+            // a failure of another thread may come wrapped again by the fork join pool
+            for (Throwable cause = e; cause != null; cause = cause.getCause()) {
+                if (cause instanceof UncheckedIOException) {
+                    throw ((UncheckedIOException) cause).getCause();
+                }
+                if (cause instanceof ConfigParseException) {
+                    throw (ConfigParseException) cause;
+                }
+            }
+            throw e;
+        }
+    }
+
+    private void parse() {
+        while (position < content.length()) {
+            parseLine();
+        }
+    }
+
+    private void parseLine() {
+        PersonConfig config = null;
+        String newName = null;
+        int newNameColumn = 0;
+        while (nextToken()) {
+            if (config == null) {
+                if (newName != null) {
+                    if (!tokenIs(NEW_PERSON)) {
+                        throw error(newNameColumn, "New person (" + newName + ") allowed only with newperson command");
+                    }
+                    config = add(newName);
+                } else {
+                    String name = content.substring(tokenStart, tokenEnd).replace('_', ' ');
+                    if (base.containsKey(name)) {
+                        config = new PersonConfig(base.get(name));
+                        configs.add(config);
+                    } else if (names.contains(name)) {
+                        config = add(name);
+                    } else {
+                        newName = name;
+                        newNameColumn = column();
+                    }
+                }
+            } else {
+                parseExpression(config);
+            }
+        }
+    }
+
+    private PersonConfig add(String name) {
+        PersonConfig config = new PersonConfig(name);
+        configs.add(config);
+        return config;
+    }
+
+    /**
+     * Finds the next expression of the line.
+     *
+     * @return false at the end of the line, which is consumed then
+     */
+    private boolean nextToken() {
+        while (position < content.length()) {
+            char c = content.charAt(position);
+            if (c == '\n') {
+                position++;
+                line++;
+                lineStart = position;
+                return false;
+            }
+            if (!isSeparator(c)) {
+                break;
+            }
+            position++;
+        }
+        if (position >= content.length()) {
+            return false;
+        }
+        tokenStart = position;
+        while (position < content.length() && content.charAt(position) != '\n' && !isSeparator(content.charAt(position))) {
+            position++;
+        }
+        tokenEnd = position;
+        return true;
+    }
+
+    private static boolean isSeparator(char c) {
+        return c == ' ' || c == ',' || c == '\t' || c == '\r';
+    }
+
+    private boolean tokenIs(String word) {
+        return tokenEnd - tokenStart == word.length() && content.regionMatches(true, tokenStart, word, 0, word.length());
+    }
+
+    private int column() {
+        return tokenStart - lineStart + 1;
+    }
+
+    private ConfigParseException error(int column, String message) {
+        return new ConfigParseException(source, line, column, message);
+    }
+
+    private void parseExpression(PersonConfig config) {
+        for (int i = 0; i < KEYWORDS.length; i++) {
+            if (tokenIs(KEYWORDS[i])) {
+                config.flags |= KEYWORD_FLAGS[i];
+                if (KEYWORD_FLAGS[i] == PersonConfig.NOFO) {
+                    config.boOnly = -1L;
+                    config.foOnly = 0;
+                }
+                return;
+            }
+        }
+        char prefix = Character.toLowerCase(content.charAt(tokenStart));
+        switch (prefix) {
+            case 'u':
+                config.wantedHolidays = parseNumber();
+                break;
+            case 'p':
+                config.wantedFridays = parseNumber();
+                break;
+            case 's':
+                config.wantedSaturdays = parseNumber();
+                break;
+            case 'v':
+                config.wantedSundays = parseNumber();
+                break;
+            case '+':
+                config.manualDayDifference = parseNumber();
+                break;
+            case '-':
+                config.manualDayDifference = -parseNumber();
+                break;
+            case 'r':
+                config.minRest = parseNumber();
+                if (config.minRest > MAX_WINDOW) {
+                    throw error(column(), "Too long rest in " + content.substring(tokenStart, tokenEnd));
+                }
+                break;
+            case 'm':
+                parseLimit(config);
+                break;
+            case 'w': {
+                long days = parseDays();
+                config.wanted |= days;
+                checkOverlap(config, days & config.hated);
+                break;
+            }
+            case 'h': {
+                long days = parseDays();
+                config.hated |= days;
+                checkOverlap(config, days & config.wanted);
+                break;
+            }
+            case 'f': {
+                long days = parseDays();
+                config.foOnly |= days;
+                config.boOnly &= ~days;
+                break;
+            }
+            case 'b': {
+                long days = parseDays();
+                config.boOnly |= days;
+                config.foOnly &= ~days;
+                break;
+            }
+            default:
+                throw error(column(), "Unknown expression: " + content.substring(tokenStart, tokenEnd));
+        }
+    }
+
+    private void checkOverlap(PersonConfig config, long both) {
+        if (both != 0) {
+            throw error(column(), config.getName() + " wants and hates the same day: " + Long.numberOfTrailingZeros(both));
+        }
+    }
+
+    /**
+     * @return the number after the prefix; of a range, its start
+     */
+    private int parseNumber() {
+        int index = tokenStart + 1;
+        int number = 0;
+        int digits = 0;
+        while (index < tokenEnd && Character.isDigit(content.charAt(index))) {
+            number = number * 10 + (content.charAt(index) - '0');
+            if (number > 9999) {
+                throw error(index - lineStart + 1, "Too large number in " + content.substring(tokenStart, tokenEnd));
+            }
+            index++;
+            digits++;
+        }
+        if (digits == 0 || (index < tokenEnd && content.charAt(index) != '-')) {
+            throw error(index - lineStart + 1, "Number expected in " + content.substring(tokenStart, tokenEnd));
+        }
+        return number;
+    }
+
+    /**
+     * Parses at most count duties in any length days: m&lt;count&gt;-&lt;length&gt;.
+     */
+    private void parseLimit(PersonConfig config) {
+        int count = parseNumber();
+        int dash = content.indexOf('-', tokenStart);
+        int length = 0;
+        int index = dash + 1;
+        while (dash >= 0 && index < tokenEnd && Character.isDigit(content.charAt(index)) && length <= MAX_WINDOW) {
+            length = length * 10 + (content.charAt(index) - '0');
+            index++;
+        }
+        if (dash < 0 || dash >= tokenEnd || index == dash + 1 || index < tokenEnd) {
+            throw error(column(), "Count and length of days expected in " + content.substring(tokenStart, tokenEnd));
+        }
+        if (count < 1 || count > MAX_WINDOW || length < 1 || length > MAX_WINDOW) {
+            throw error(column(), "The count and the length must be 1-" + MAX_WINDOW + " in "
+                    + content.substring(tokenStart, tokenEnd));
+        }
+        config.maxDuties = count;
+        config.dutyWindow = length;
+    }
+
+    /**
+     * @return the mask of the day or the range after the prefix
+     */
+    private long parseDays() {
+        int index = tokenStart + 1;
+        int[] range = new int[2];
+        for (int part = 0; part < 2; part++) {
+            int start = index;
+            int day = 0;
+            while (index < tokenEnd && Character.isDigit(content.charAt(index)) && day <= MAX_DAY) {
+                day = day * 10 + (content.charAt(index) - '0');
+                index++;
+            }
+            if (index == start || (index < tokenEnd && Character.isDigit(content.charAt(index)))
+                    || day < 1 || day > MAX_DAY) {
+                throw error(start - lineStart + 1, "Day expected in " + content.substring(tokenStart, tokenEnd));
+            }
+            range[part] = day;
+            if (index < tokenEnd && content.charAt(index) == '-' && part == 0) {
+                index++;
+            } else {
+                range[1] = part == 0 ? day : range[1];
+                break;
+            }
+        }
+        if (index < tokenEnd) {
+            throw error(index - lineStart + 1, "Unexpected character in " + content.substring(tokenStart, tokenEnd));
+        }
+        if (range[1] < range[0]) {
+            return 0;
+        }
+        long upper = range[1] == MAX_DAY ? -1L : (1L << (range[1] + 1)) - 1;
+        return upper & -(1L << range[0]);
+    }
+}
@@ -18,6 +18,9 @@ public class Person {
     private volatile int numOfWantedFridays = 0;
     private volatile int numOfWantedSaturdays = 0;
     private volatile int numOfWantedSundays = 0;
+    private volatile int minRest = 0;
+    private volatile int maxDuties = 0;
+    private volatile int dutyWindow = 0;
 
 // Add getters and setters for the above 4 fields
     public int getNumOfWantedHolidays() {
@@ -44,6 +47,29 @@ public class Person {
     public void setNumOfWantedSundays(int numOfWantedSundays) {
         this.numOfWantedSundays = numOfWantedSundays;
     }
+
+    /**
+     * @return the free days wanted between two duties, 0 if only the default rest
+     */
+    public int getMinRest() {
+        return minRest;
+    }
+    public void setMinRest(int minRest) {
+        this.minRest = minRest;
+    }
+    /**
+     * @return at most this many duties in any {@link #getDutyWindow()} days, 0 if there is no limit
+     */
+    public int getMaxDuties() {
+        return maxDuties;
+    }
+    public int getDutyWindow() {
+        return dutyWindow;
+    }
+    public void setMaxDuties(int maxDuties, int dutyWindow) {
+        this.maxDuties = maxDuties;
+        this.dutyWindow = dutyWindow;
+    }
     
 
 
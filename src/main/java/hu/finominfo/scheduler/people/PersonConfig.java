@@ -0,0 +1,201 @@
+package hu.finominfo.scheduler.people;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+/**
+ * The compiled config line of a person: the day constraints are day masks (bit n is day n), the weekday
+ * keywords are flags, as they only become days with the calendar of a month.
+ */
+public class PersonConfig {
+
+    public static final int NOFO = 1;
+    public static final int HATES_WEEKENDS = 2;
+    public static final int HATES_WEEKDAYS = 4;
+    public static final int HATES_MONDAYS = 8;
+    public static final int HATES_TUESDAYS = 16;
+    public static final int HATES_WEDNESDAYS = 32;
+    public static final int HATES_THURSDAYS = 64;
+    public static final int HATES_FRIDAYS = 128;
+    public static final int WANTS_TUESDAYS = 256;
+
+    private final String name;
+    int flags;
+    long hated;
+    long wanted;
+    long foOnly;
+    long boOnly;
+    int wantedHolidays;
+    int wantedFridays;
+    int wantedSaturdays;
+    int wantedSundays;
+    int manualDayDifference;
+    int minRest;
+    int maxDuties;
+    int dutyWindow;
+
+    PersonConfig(String name) {
+        this.name = name;
+    }
+
+    PersonConfig(PersonConfig other) {
+        this.name = other.name;
+        this.flags = other.flags;
+        this.hated = other.hated;
+        this.wanted = other.wanted;
+        this.foOnly = other.foOnly;
+        this.boOnly = other.boOnly;
+        this.wantedHolidays = other.wantedHolidays;
+        this.wantedFridays = other.wantedFridays;
+        this.wantedSaturdays = other.wantedSaturdays;
+        this.wantedSundays = other.wantedSundays;
+        this.manualDayDifference = other.manualDayDifference;
+        this.minRest = other.minRest;
+        this.maxDuties = other.maxDuties;
+        this.dutyWindow = other.dutyWindow;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public boolean is(int flag) {
+        return (flags & flag) != 0;
+    }
+
+    public long getHated() {
+        return hated;
+    }
+
+    public long getWanted() {
+        return wanted;
+    }
+
+    public long getFoOnly() {
+        return foOnly;
+    }
+
+    public long getBoOnly() {
+        return boOnly;
+    }
+
+    public int getWantedHolidays() {
+        return wantedHolidays;
+    }
+
+    public int getWantedFridays() {
+        return wantedFridays;
+    }
+
+    public int getWantedSaturdays() {
+        return wantedSaturdays;
+    }
+
+    public int getWantedSundays() {
+        return wantedSundays;
+    }
+
+    public int getManualDayDifference() {
+        return manualDayDifference;
+    }
+
+    public int getMinRest() {
+        return minRest;
+    }
+
+    public int getMaxDuties() {
+        return maxDuties;
+    }
+
+    public int getDutyWindow() {
+        return dutyWindow;
+    }
+
+    /**
+     * @return a copy which also hates the given days, except the wanted ones
+     */
+    public PersonConfig withHated(long days) {
+        PersonConfig copy = new PersonConfig(this);
+        copy.hated |= days & ~wanted;
+        return copy;
+    }
+
+    /**
+     * Writes the config in 47 bytes plus the name, e.g. to send it to a worker.
+     */
+    public void write(DataOutput out) throws IOException {
+        out.writeUTF(name);
+        out.writeShort(flags);
+        out.writeLong(hated);
+        out.writeLong(wanted);
+        out.writeLong(foOnly);
+        out.writeLong(boOnly);
+        out.writeShort(wantedHolidays);
+        out.writeShort(wantedFridays);
+        out.writeShort(wantedSaturdays);
+        out.writeShort(wantedSundays);
+        out.writeShort(manualDayDifference);
+        out.writeByte(minRest);
+        out.writeByte(maxDuties);
+        out.writeByte(dutyWindow);
+    }
+
+    public static PersonConfig read(DataInput in) throws IOException {
+        PersonConfig config = new PersonConfig(in.readUTF());
+        config.flags = in.readUnsignedShort();
+        config.hated = in.readLong();
+        config.wanted = in.readLong();
+        config.foOnly = in.readLong();
+        config.boOnly = in.readLong();
+        config.wantedHolidays = in.readShort();
+        config.wantedFridays = in.readShort();
+        config.wantedSaturdays = in.readShort();
+        config.wantedSundays = in.readShort();
+        config.manualDayDifference = in.readShort();
+        config.minRest = in.readUnsignedByte();
+        config.maxDuties = in.readUnsignedByte();
+        config.dutyWindow = in.readUnsignedByte();
+        return config;
+    }
+
+    public Person toPerson() {
+        Person person = new Person(name);
+        person.setNofo(is(NOFO));
+        person.setHatesWeekends(is(HATES_WEEKENDS));
+        person.setHatesWeekdays(is(HATES_WEEKDAYS));
+        person.setHatesMondays(is(HATES_MONDAYS));
+        person.setHatesTuesdays(is(HATES_TUESDAYS));
+        person.setHatesWednesdays(is(HATES_WEDNESDAYS));
+        person.setHatesThursdays(is(HATES_THURSDAYS));
+        person.setHatesFridays(is(HATES_FRIDAYS));
+        person.setWantedTuesdays(is(WANTS_TUESDAYS));
+        person.setNumOfWantedHolidays(wantedHolidays);
+        person.setNumOfWantedFridays(wantedFridays);
+        person.setNumOfWantedSaturdays(wantedSaturdays);
+        person.setNumOfWantedSundays(wantedSundays);
+        person.getManualDayDifference().set(manualDayDifference);
+        person.setMinRest(minRest);
+        person.setMaxDuties(maxDuties, dutyWindow);
+        if (is(NOFO)) {
+            for (int day : person.getTypes().keySet()) {
+                person.setType(day, Type.BO);
+            }
+        }
+        for (int day = 1; day < 64; day++) {
+            long bit = 1L << day;
+            if ((hated & bit) != 0) {
+                person.getHatedDays().add(day);
+            }
+            if ((wanted & bit) != 0) {
+                person.getWantedDays().add(day);
+            }
+            if ((foOnly & bit) != 0) {
+                person.setType(day, Type.FO);
+            } else if ((boOnly & bit) != 0) {
+                person.setType(day, Type.BO);
+            }
+        }
+        return person;
+    }
+}
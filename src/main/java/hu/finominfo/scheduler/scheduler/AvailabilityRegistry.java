@@ -0,0 +1,121 @@
+package hu.finominfo.scheduler.scheduler;
+
+import java.util.*;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * The duty days of every person of a month across the teams, shared by the Schedulers of the teams solved at
+ * the same time. Every person has one 64 bit word (bit n is day n) in an AtomicLongArray; a day is reserved with
+ * a compare-and-set on that word, so two teams never get the same person on the same or on adjacent days, and
+ * nobody waits for a lock. A team reserves and releases through its own {@link Booking}, which remembers the
+ * days of the team: the neighbouring days of the own duties are not blocked, the Scheduler decides about those.
+ */
+public class AvailabilityRegistry {
+
+    private final Map<String, Integer> positions = new HashMap<>();
+    private final AtomicLongArray days;
+    private final int numOfDays;
+
+    /**
+     * @param names everybody of all the teams; the others are always free
+     */
+    public AvailabilityRegistry(int numOfDays, Collection<String> names) {
+        this.numOfDays = numOfDays;
+        for (String name : names) {
+            positions.putIfAbsent(name, positions.size());
+        }
+        days = new AtomicLongArray(positions.size());
+    }
+
+    public Booking open(String team) {
+        return new Booking(team);
+    }
+
+    /**
+     * @return the reserved days of the person in all the teams
+     */
+    public long getDays(String name) {
+        Integer position = positions.get(name);
+        return position == null ? 0 : days.get(position);
+    }
+
+    private static long window(int day) {
+        long bit = 1L << day;
+        return bit | bit << 1 | bit >>> 1;
+    }
+
+    /**
+     * The reservations of one team, used by one thread.
+     */
+    public class Booking {
+        private final String team;
+        private final long[] own = new long[positions.size()];
+
+        private Booking(String team) {
+            this.team = team;
+        }
+
+        public String getTeam() {
+            return team;
+        }
+
+        /**
+         * @return false if another team has the person on the day or next to it
+         */
+        public boolean isFree(String name, int day) {
+            Integer position = positions.get(name);
+            return position == null || day < 1 || day > numOfDays
+                    || (days.get(position) & ~own[position] & window(day)) == 0;
+        }
+
+        /**
+         * Reserves the day for the team if no other team has the person on it or next to it.
+         */
+        public boolean reserve(String name, int day) {
+            Integer position = positions.get(name);
+            if (position == null || day < 1 || day > numOfDays) {
+                return true;
+            }
+            long bit = 1L << day;
+            long current;
+            do {
+                current = days.get(position);
+                if ((current & ~own[position] & window(day)) != 0) {
+                    return false;
+                }
+            } while (!days.compareAndSet(position, current, current | bit));
+            own[position] |= bit;
+            return true;
+        }
+
+        public void release(String name, int day) {
+            Integer position = positions.get(name);
+            if (position == null || day < 1 || day > numOfDays || (own[position] & (1L << day)) == 0) {
+                return;
+            }
+            long bit = 1L << day;
+            long current;
+            do {
+                current = days.get(position);
+            } while (!days.compareAndSet(position, current, current & ~bit));
+            own[position] &= ~bit;
+        }
+
+        /**
+         * Releases every day of the team, e.g. after a failed solve.
+         */
+        public void releaseAll() {
+            for (int position = 0; position < own.length; position++) {
+                long mask = own[position];
+                if (mask == 0) {
+                    continue;
+                }
+                long current;
+                do {
+                    current = days.get(position);
+                } while (!days.compareAndSet(position, current, current & ~mask));
+                own[position] = 0;
+            }
+        }
+    }
+}
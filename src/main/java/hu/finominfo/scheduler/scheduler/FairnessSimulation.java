@@ -0,0 +1,294 @@
+package hu.finominfo.scheduler.scheduler;
+
+import hu.finominfo.scheduler.people.Person;
+import hu.finominfo.scheduler.people.PersonConfig;
+import hu.finominfo.scheduler.util.MonthStatistics;
+import hu.finominfo.scheduler.util.WorkCalendar;
+import hu.finominfo.scheduler.util.YearToDate;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.time.DayOfWeek;
+import java.time.LocalDate;
+import java.util.*;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+/**
+ * Solves many synthetic years with the real Scheduler to see whether the rules of the config (hend, nofo, the
+ * manual differences, ...) are unfair in the long run. Every month of a synthetic year gets random leaves: a
+ * person is away for 1-5 days with the given probability. The yearly duties, weekend days, holidays and standby
+ * hours (with the weights of {@link YearToDate}) of every person are collected into running mean and variance
+ * accumulators, nothing of a simulated month is kept. The years are simulated in batches on all the cores and
+ * the statistics are reported after every batch.
+ */
+public class FairnessSimulation {
+
+    private static final Logger LOGGER = LogManager.getLogger(FairnessSimulation.class);
+
+    private static final int BATCH = 50;
+    private static final int ATTEMPTS = 5;
+    private static final int MAX_LEAVE = 5;
+
+    public enum Metric {
+        DUTIES, WEEKENDS, HOLIDAYS, STANDBY
+    }
+
+    private static final int METRICS = Metric.values().length;
+
+    /**
+     * Mean, variance (Welford), minimum and maximum of the yearly values of every person and metric.
+     */
+    public static class Statistics {
+        private final List<String> names;
+        private long years;
+        private long failedMonths;
+        private final double[] mean;
+        private final double[] m2;
+        private final double[] min;
+        private final double[] max;
+
+        Statistics(List<String> names) {
+            this.names = names;
+            int size = names.size() * METRICS;
+            mean = new double[size];
+            m2 = new double[size];
+            min = new double[size];
+            max = new double[size];
+            Arrays.fill(min, Double.MAX_VALUE);
+            Arrays.fill(max, -Double.MAX_VALUE);
+        }
+
+        private Statistics(Statistics other) {
+            this.names = other.names;
+            this.years = other.years;
+            this.failedMonths = other.failedMonths;
+            this.mean = other.mean.clone();
+            this.m2 = other.m2.clone();
+            this.min = other.min.clone();
+            this.max = other.max.clone();
+        }
+
+        /**
+         * @param values the yearly values, METRICS values per person
+         */
+        void add(double[] values) {
+            years++;
+            for (int i = 0; i < values.length; i++) {
+                double delta = values[i] - mean[i];
+                mean[i] += delta / years;
+                m2[i] += delta * (values[i] - mean[i]);
+                min[i] = Math.min(min[i], values[i]);
+                max[i] = Math.max(max[i], values[i]);
+            }
+        }
+
+        void merge(Statistics other) {
+            failedMonths += other.failedMonths;
+            if (other.years == 0) {
+                return;
+            }
+            long total = years + other.years;
+            for (int i = 0; i < mean.length; i++) {
+                double delta = other.mean[i] - mean[i];
+                mean[i] += delta * other.years / total;
+                m2[i] += other.m2[i] + delta * delta * years * other.years / total;
+                min[i] = Math.min(min[i], other.min[i]);
+                max[i] = Math.max(max[i], other.max[i]);
+            }
+            years = total;
+        }
+
+        public List<String> getNames() {
+            return names;
+        }
+
+        public long getYears() {
+            return years;
+        }
+
+        /**
+         * @return the months which could not be solved, their years are left out
+         */
+        public long getFailedMonths() {
+            return failedMonths;
+        }
+
+        private int index(String name, Metric metric) {
+            int position = names.indexOf(name);
+            if (position < 0) {
+                throw new IllegalArgumentException(name + " is not in the simulation");
+            }
+            return position * METRICS + metric.ordinal();
+        }
+
+        public double getMean(String name, Metric metric) {
+            return mean[index(name, metric)];
+        }
+
+        public double getStandardDeviation(String name, Metric metric) {
+            return years < 2 ? 0 : Math.sqrt(m2[index(name, metric)] / (years - 1));
+        }
+
+        public double getMin(String name, Metric metric) {
+            return years == 0 ? 0 : min[index(name, metric)];
+        }
+
+        public double getMax(String name, Metric metric) {
+            return years == 0 ? 0 : max[index(name, metric)];
+        }
+
+        public String toCsv() {
+            StringBuilder sb = new StringBuilder("name,metric,years,mean,stddev,min,max").append(System.lineSeparator());
+            for (String name : names) {
+                for (Metric metric : Metric.values()) {
+                    sb.append(String.format(Locale.ROOT, "%s,%s,%d,%.3f,%.3f,%.2f,%.2f", name, metric, years,
+                            getMean(name, metric), getStandardDeviation(name, metric),
+                            getMin(name, metric), getMax(name, metric)))
+                            .append(System.lineSeparator());
+                }
+            }
+            return sb.toString();
+        }
+    }
+
+    private final List<PersonConfig> configs;
+    private final List<String> names = new ArrayList<>();
+    private final int year;
+    private final double leaveProbability;
+    private final long seed;
+    // per month, indexed by day
+    private final double[][] standby = new double[12][];
+    private final boolean[][] weekend = new boolean[12][];
+    private final boolean[][] holiday = new boolean[12][];
+
+    public FairnessSimulation(List<PersonConfig> configs, int year, double leaveProbability, long seed) {
+        this.configs = configs;
+        this.year = year;
+        this.leaveProbability = leaveProbability;
+        this.seed = seed;
+        configs.forEach(config -> names.add(config.getName()));
+        WorkCalendar calendar = WorkCalendar.of(year);
+        for (int month = 0; month < 12; month++) {
+            LocalDate first = LocalDate.of(year, month + 1, 1);
+            int numOfDays = first.lengthOfMonth();
+            standby[month] = new double[numOfDays + 1];
+            weekend[month] = new boolean[numOfDays + 1];
+            holiday[month] = new boolean[numOfDays + 1];
+            for (int day = 1; day <= numOfDays; day++) {
+                int dayOfYear = first.getDayOfYear() + day - 1;
+                DayOfWeek dayOfWeek = calendar.getDayOfWeek(dayOfYear);
+                // the standby kind by the calendar weekday and the holiday flag, as MonthStatistics has it
+                DayOfWeek weekday = first.withDayOfMonth(day).getDayOfWeek();
+                int kind = weekday == DayOfWeek.SATURDAY ? MonthStatistics.SATURDAY
+                        : weekday == DayOfWeek.SUNDAY ? MonthStatistics.SUNDAY
+                        : weekday == DayOfWeek.FRIDAY ? MonthStatistics.FRIDAY
+                        : MonthStatistics.MON_TO_THU;
+                if (calendar.isHoliday(dayOfYear)) {
+                    kind |= MonthStatistics.HOLIDAY;
+                    holiday[month][day] = true;
+                }
+                weekend[month][day] = dayOfWeek == DayOfWeek.SATURDAY || dayOfWeek == DayOfWeek.SUNDAY;
+                standby[month][day] = YearToDate.getStandby(kind);
+            }
+        }
+    }
+
+    /**
+     * @param progress gets the statistics of all the years done so far after every batch
+     */
+    public Statistics run(int years, Consumer<Statistics> progress) throws InterruptedException {
+        Statistics total = new Statistics(names);
+        AtomicInteger nextBatch = new AtomicInteger();
+        int batches = (years + BATCH - 1) / BATCH;
+        int threads = Math.max(1, Math.min(batches, Runtime.getRuntime().availableProcessors()));
+        ExecutorService executor = Executors.newFixedThreadPool(threads, runnable -> {
+            Thread thread = new Thread(runnable, "simulation");
+            thread.setDaemon(true);
+            return thread;
+        });
+        try {
+            List<Future<?>> workers = new ArrayList<>();
+            for (int i = 0; i < threads; i++) {
+                workers.add(executor.submit(() -> {
+                    int batch;
+                    while ((batch = nextBatch.getAndIncrement()) < batches) {
+                        Statistics statistics = new Statistics(names);
+                        for (int index = batch * BATCH; index < Math.min(years, (batch + 1) * BATCH); index++) {
+                            simulateYear(index, statistics);
+                        }
+                        synchronized (total) {
+                            total.merge(statistics);
+                            progress.accept(new Statistics(total));
+                        }
+                    }
+                }));
+            }
+            for (Future<?> worker : workers) {
+                worker.get();
+            }
+        } catch (ExecutionException e) {
+            throw new RuntimeException("The simulation failed", e.getCause());
+        } finally {
+            executor.shutdownNow();
+        }
+        if (total.getFailedMonths() > 0) {
+            LOGGER.warn(total.getFailedMonths() + " simulated months could not be solved, their years are left out");
+        }
+        return total;
+    }
+
+    private void simulateYear(int index, Statistics statistics) {
+        // every year has its own random, the result does not depend on the threads
+        Random random = new Random(seed ^ (index + 1) * 0x9E3779B97F4A7C15L);
+        double[] values = new double[names.size() * METRICS];
+        for (int month = 0; month < 12; month++) {
+            Map<Integer, Set<String>> scheduled = solveMonth(month, random);
+            if (scheduled == null) {
+                statistics.failedMonths++;
+                return;
+            }
+            for (int day = 1; day < standby[month].length; day++) {
+                for (String name : scheduled.get(day)) {
+                    int offset = names.indexOf(name) * METRICS;
+                    values[offset + Metric.DUTIES.ordinal()]++;
+                    if (weekend[month][day]) {
+                        values[offset + Metric.WEEKENDS.ordinal()]++;
+                    }
+                    if (holiday[month][day]) {
+                        values[offset + Metric.HOLIDAYS.ordinal()]++;
+                    }
+                    values[offset + Metric.STANDBY.ordinal()] += standby[month][day];
+                }
+            }
+        }
+        statistics.add(values);
+    }
+
+    private Map<Integer, Set<String>> solveMonth(int month, Random random) {
+        LocalDate date = LocalDate.of(year, month + 1, 1);
+        int numOfDays = date.lengthOfMonth();
+        for (int attempt = 0; attempt < ATTEMPTS; attempt++) {
+            Map<String, Person> people = new HashMap<>();
+            for (PersonConfig config : configs) {
+                if (random.nextDouble() < leaveProbability) {
+                    int length = 1 + random.nextInt(MAX_LEAVE);
+                    int start = 1 + random.nextInt(numOfDays - length + 1);
+                    long days = ((1L << (start + length)) - 1) & -(1L << start);
+                    config = config.withHated(days);
+                }
+                people.put(config.getName(), config.toPerson());
+            }
+            try {
+                return new Scheduler(people, date, random.nextLong()).getScheduled();
+            } catch (RuntimeException e) {
+                LOGGER.debug("Simulated " + date + " failed: " + e.getMessage());
+            }
+        }
+        return null;
+    }
+}
@@ -0,0 +1,150 @@
+package hu.finominfo.scheduler.scheduler;
+
+import hu.finominfo.scheduler.people.Person;
+
+import java.util.*;
+
+/**
+ * The rest and load rules of a month, checked on a day mask of the duties of every person (bit day + 8, as the
+ * Scheduler keeps the days from -8). A rule on the days around a duty is a mask of relative days, so a check is
+ * a shift and an and; a limit of the duties in any days of a length is a popcount for each window with the day.
+ * Assigning and unassigning a duty sets and clears a bit.
+ * <p>
+ * The built-in rules are the ones the Scheduler always had: a weekday is not next to another duty, a weekend day
+ * or a holiday is not after a duty or two days before one, and the candidates with duties near the day are
+ * ordered after the others. The rest (r2) and the limit (m2-7) of the config of a person come on top of them.
+ */
+public class RestRules {
+
+    private static final int SHIFT = 8;
+    private static final int CENTER = 32;
+    private static final int MAX_OFFSET = 31;
+
+    /**
+     * Days around a duty, e.g. -1 and 1 are the day before and after it, with the weight of a soft rule.
+     */
+    public static class Near {
+        private final long offsets;
+        private final int weight;
+
+        public Near(int weight, int... offsets) {
+            long mask = 0;
+            for (int offset : offsets) {
+                if (offset == 0 || Math.abs(offset) > MAX_OFFSET) {
+                    throw new IllegalArgumentException("Wrong offset: " + offset);
+                }
+                mask |= 1L << (CENTER + offset);
+            }
+            this.offsets = mask;
+            this.weight = weight;
+        }
+
+        public int getWeight() {
+            return weight;
+        }
+    }
+
+    public static final Near NO_REST = new Near(0);
+    public static final Near WEEKDAY_REST = new Near(0, -1, 1);
+    public static final Near WEEKEND_REST = new Near(0, -1, 2);
+    public static final List<Near> WEEKDAY_PENALTIES = List.of(new Near(2, -2, 2), new Near(1, -3, 3));
+    public static final List<Near> WEEKEND_PENALTIES = List.of(
+            new Near(4, -2, 3), new Near(2, -3, 4), new Near(1000, -7, 7), new Near(1000, -6, 8));
+
+    private final Map<String, Integer> positions = new HashMap<>();
+    private final long[] duties;
+    private final long[] rest;
+    private final int[] maxDuties;
+    private final long[] windows;
+
+    public RestRules(Collection<Person> people) {
+        int size = people.size();
+        duties = new long[size];
+        rest = new long[size];
+        maxDuties = new int[size];
+        windows = new long[size];
+        for (Person person : people) {
+            int position = positions.size();
+            positions.put(person.getName(), position);
+            if (person.getMinRest() > 0) {
+                int[] offsets = new int[2 * Math.min(person.getMinRest(), MAX_OFFSET)];
+                for (int i = 0; i < offsets.length / 2; i++) {
+                    offsets[2 * i] = -(i + 1);
+                    offsets[2 * i + 1] = i + 1;
+                }
+                rest[position] = new Near(0, offsets).offsets;
+            }
+            if (person.getMaxDuties() > 0 && person.getDutyWindow() > 0) {
+                maxDuties[position] = person.getMaxDuties();
+                windows[position] = (1L << Math.min(person.getDutyWindow(), MAX_OFFSET)) - 1;
+            }
+        }
+    }
+
+    public void assign(String name, int day) {
+        duties[positions.get(name)] |= bit(day);
+    }
+
+    public void unassign(String name, int day) {
+        duties[positions.get(name)] &= ~bit(day);
+    }
+
+    public int getNumOfDuties(String name) {
+        return Long.bitCount(duties[positions.get(name)]);
+    }
+
+    /**
+     * @param near the built-in days which must be free around the day
+     * @return true if the person may be on duty on the day
+     */
+    public boolean allows(String name, int day, Near near) {
+        int position = positions.get(name);
+        if ((around(duties[position], day) & (near.offsets | rest[position])) != 0) {
+            return false;
+        }
+        if (maxDuties[position] == 0) {
+            return true;
+        }
+        long mask = duties[position] | bit(day);
+        long window = windows[position];
+        int length = Long.bitCount(window);
+        for (int start = day - length + 1; start <= day; start++) {
+            if (Long.bitCount(mask & shift(window, start + SHIFT)) > maxDuties[position]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @return the sum of the weights of the rules with a duty of the person near the day
+     */
+    public int getPenalty(String name, int day, List<Near> rules) {
+        long around = around(duties[positions.get(name)], day);
+        int penalty = 0;
+        for (Near rule : rules) {
+            if ((around & rule.offsets) != 0) {
+                penalty += rule.weight;
+            }
+        }
+        return penalty;
+    }
+
+    /**
+     * @return the duties moved so that the day is at the center bit
+     */
+    private static long around(long mask, int day) {
+        return shift(mask, CENTER - day - SHIFT);
+    }
+
+    private static long shift(long mask, int distance) {
+        if (distance >= 64 || distance <= -64) {
+            return 0;
+        }
+        return distance >= 0 ? mask << distance : mask >>> -distance;
+    }
+
+    private static long bit(int day) {
+        return 1L << (day + SHIFT);
+    }
+}
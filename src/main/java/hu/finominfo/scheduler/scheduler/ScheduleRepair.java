@@ -0,0 +1,362 @@
+package hu.finominfo.scheduler.scheduler;
+
+import hu.finominfo.scheduler.people.Person;
+import hu.finominfo.scheduler.util.MonthStatistics;
+import hu.finominfo.scheduler.util.YearToDate;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.util.*;
+
+/**
+ * Adapts a published month to changed constraints instead of solving it again. The month is checked against
+ * the new config: the people of hated days, of impossible roles, of the duties which break their rest or duty
+ * limit and of the days newly wanted by somebody are taken off, everybody else stays where they are. The open
+ * places are filled one by one with the least loaded person who fits, with the rest around weekdays and weekends
+ * of the Scheduler as hard rules and its spacing penalties on top of the hours; if nobody fits, one person from
+ * the days within the radius is moved over and that day is filled instead.
+ */
+public class ScheduleRepair {
+
+    private static final Logger LOGGER = LogManager.getLogger(ScheduleRepair.class);
+
+    public static final int DEFAULT_RADIUS = 3;
+
+    private final ScheduleSnapshot previous;
+    private final Collection<Person> persons;
+    private final ScheduleValidator validator;
+    private final RestRules rules;
+    private final int radius;
+    private final int numOfDays;
+    private final long[] work;
+    private final long[] ims1;
+    private final double[] standby;
+    private final double[] dayStandby;
+    private final int[] perDay;
+    private final Set<Integer> touchedDays = new TreeSet<>();
+    private final Set<String> disturbed = new TreeSet<>();
+
+    public ScheduleRepair(ScheduleSnapshot previous, Collection<Person> persons, int radius) {
+        this.previous = previous;
+        this.persons = persons;
+        this.validator = ScheduleValidator.of(previous.getDate(), persons);
+        this.rules = new RestRules(persons);
+        this.radius = radius;
+        this.numOfDays = previous.getNumOfDays();
+        int size = validator.getNames().size();
+        work = new long[size];
+        ims1 = new long[size];
+        standby = new double[size];
+        perDay = new int[numOfDays + 1];
+        dayStandby = new double[numOfDays + 1];
+        MonthStatistics statistics = new MonthStatistics(previous);
+        for (int day = 1; day <= numOfDays; day++) {
+            dayStandby[day] = YearToDate.getStandby(statistics.getDayKind(day));
+        }
+    }
+
+    public ScheduleSnapshot repair() {
+        for (int day = 1; day <= numOfDays; day++) {
+            String foName = previous.getFoName(day);
+            for (String name : previous.getScheduled(day)) {
+                int position = validator.positionOf(name);
+                if (position < 0) {
+                    // not in the config any more
+                    disturbed.add(name);
+                    touchedDays.add(day);
+                    continue;
+                }
+                work[position] |= 1L << day;
+                rules.assign(name, day);
+                if (name.equals(foName)) {
+                    ims1[position] |= 1L << day;
+                }
+                standby[position] += dayStandby[day];
+                perDay[day]++;
+            }
+        }
+
+        List<ScheduleValidator.Violation> wantedDays = new ArrayList<>();
+        for (ScheduleValidator.Violation violation : validator.validate(previous)) {
+            int position = violation.getName() == null ? -1 : validator.positionOf(violation.getName());
+            if (position < 0) {
+                continue;
+            }
+            int day = violation.getDay();
+            switch (violation.getRule()) {
+                case HATED_DAY:
+                    unassign(position, day);
+                    break;
+                case TYPE:
+                    if (!flipRoles(day)) {
+                        unassign(position, day);
+                    }
+                    break;
+                case MIN_REST:
+                case MAX_DUTIES:
+                    // an earlier duty taken off may have solved it already
+                    if ((work[position] & (1L << day)) != 0 && breaksRest(position, day)) {
+                        unassign(position, day);
+                    }
+                    break;
+                case WANTED_DAY:
+                    // only the days wanted since the month was published
+                    String name = violation.getName();
+                    if (!previous.getNames().contains(name) || (previous.getWantedMask(name) & (1L << day)) == 0) {
+                        wantedDays.add(violation);
+                    }
+                    break;
+                default:
+            }
+        }
+        for (ScheduleValidator.Violation violation : wantedDays) {
+            takeWantedDay(validator.positionOf(violation.getName()), violation.getDay());
+        }
+
+        for (int day = 1; day <= numOfDays; day++) {
+            while (perDay[day] < 2) {
+                if (!fill(day, true)) {
+                    throw new RuntimeException("I found no person for " + day);
+                }
+            }
+        }
+        for (int day : touchedDays) {
+            setRoles(day);
+        }
+        LOGGER.info("Repaired days: " + touchedDays + ", disturbed people: " + disturbed);
+        return toSnapshot();
+    }
+
+    public Set<String> getDisturbed() {
+        return disturbed;
+    }
+
+    public Set<Integer> getTouchedDays() {
+        return touchedDays;
+    }
+
+    private void assign(int position, int day) {
+        work[position] |= 1L << day;
+        rules.assign(validator.getNames().get(position), day);
+        standby[position] += dayStandby[day];
+        perDay[day]++;
+        touchedDays.add(day);
+        disturbed.add(validator.getNames().get(position));
+    }
+
+    private void unassign(int position, int day) {
+        if ((work[position] & (1L << day)) == 0) {
+            return;
+        }
+        work[position] &= ~(1L << day);
+        rules.unassign(validator.getNames().get(position), day);
+        ims1[position] &= ~(1L << day);
+        standby[position] -= dayStandby[day];
+        perDay[day]--;
+        touchedDays.add(day);
+        disturbed.add(validator.getNames().get(position));
+    }
+
+    /**
+     * @return true if the duty of the person on the day breaks the rest or the duty limit of the config
+     */
+    private boolean breaksRest(int position, int day) {
+        String name = validator.getNames().get(position);
+        rules.unassign(name, day);
+        boolean allowed = rules.allows(name, day, RestRules.NO_REST);
+        rules.assign(name, day);
+        return !allowed;
+    }
+
+    private List<Integer> peopleOf(int day) {
+        List<Integer> positions = new ArrayList<>(2);
+        for (int position = 0; position < work.length; position++) {
+            if ((work[position] & (1L << day)) != 0) {
+                positions.add(position);
+            }
+        }
+        return positions;
+    }
+
+    private boolean flipRoles(int day) {
+        List<Integer> people = peopleOf(day);
+        if (people.size() != 2) {
+            return false;
+        }
+        int first = people.get(0);
+        int second = people.get(1);
+        int newIms1 = (ims1[first] & (1L << day)) != 0 ? second : first;
+        int newIms2 = newIms1 == first ? second : first;
+        if (!validator.canBeIms1(newIms1, day) || !validator.canBeIms2(newIms2, day)) {
+            return false;
+        }
+        ims1[newIms2] &= ~(1L << day);
+        ims1[newIms1] |= 1L << day;
+        touchedDays.add(day);
+        return true;
+    }
+
+    private void takeWantedDay(int position, int day) {
+        if (validator.isHated(position, day) || (work[position] & (1L << day)) != 0) {
+            return;
+        }
+        List<Integer> people = peopleOf(day);
+        if (people.size() == 2) {
+            // the one who can leave without breaking the roles and has more hours goes
+            people.sort(Comparator.comparingDouble(other -> -standby[other]));
+            for (int other : people) {
+                int remaining = people.get(0) == other ? people.get(1) : people.get(0);
+                if (compatible(position, remaining, day)) {
+                    unassign(other, day);
+                    assign(position, day);
+                    return;
+                }
+            }
+            LOGGER.warn(validator.getNames().get(position) + " can not get the wanted day " + day);
+        } else if (people.isEmpty() || compatible(position, people.get(0), day)) {
+            assign(position, day);
+        }
+    }
+
+    private boolean compatible(int first, int second, int day) {
+        return (validator.canBeIms1(first, day) && validator.canBeIms2(second, day))
+                || (validator.canBeIms1(second, day) && validator.canBeIms2(first, day));
+    }
+
+    private boolean canTake(int position, int day) {
+        if ((work[position] & (1L << day)) != 0 || validator.isHated(position, day)) {
+            return false;
+        }
+        for (int other : peopleOf(day)) {
+            if (!compatible(position, other, day)) {
+                return false;
+            }
+        }
+        // the rest around the day, the rest and the duty limit of the config, as the Scheduler keeps them
+        String name = validator.getNames().get(position);
+        if (!rules.allows(name, day, restOf(day))) {
+            return false;
+        }
+        // and the rest around the near duties of the person with the new one
+        rules.assign(name, day);
+        try {
+            for (int other = Math.max(1, day - 2); other <= Math.min(numOfDays, day + 2); other++) {
+                if (other != day && (work[position] & (1L << other)) != 0 && !rules.allows(name, other, restOf(other))) {
+                    return false;
+                }
+            }
+        } finally {
+            rules.unassign(name, day);
+        }
+        return true;
+    }
+
+    private boolean isWeekendOrHoliday(int day) {
+        return (previous.getDayFlags(day)
+                & (ScheduleSnapshot.DAY_HOLIDAY | ScheduleSnapshot.DAY_SATURDAY | ScheduleSnapshot.DAY_SUNDAY)) != 0;
+    }
+
+    private RestRules.Near restOf(int day) {
+        return isWeekendOrHoliday(day) ? RestRules.WEEKEND_REST : RestRules.WEEKDAY_REST;
+    }
+
+    private int score(int position, int day) {
+        String name = validator.getNames().get(position);
+        int penalty = rules.getPenalty(name, day,
+                isWeekendOrHoliday(day) ? RestRules.WEEKEND_PENALTIES : RestRules.WEEKDAY_PENALTIES);
+        return penalty + (int) Math.round(standby[position]);
+    }
+
+    /**
+     * Puts the best fitting person on the day; with chain, a person of a day within the radius may be moved
+     * over and that day filled instead.
+     */
+    private boolean fill(int day, boolean chain) {
+        int best = -1;
+        int bestScore = Integer.MAX_VALUE;
+        for (int position = 0; position < work.length; position++) {
+            if (canTake(position, day)) {
+                int score = score(position, day);
+                if (score < bestScore) {
+                    bestScore = score;
+                    best = position;
+                }
+            }
+        }
+        if (best >= 0) {
+            assign(best, day);
+            return true;
+        }
+        if (!chain) {
+            return false;
+        }
+        for (int distance = 1; distance <= radius; distance++) {
+            for (int other : new int[]{day - distance, day + distance}) {
+                if (other < 1 || other > numOfDays) {
+                    continue;
+                }
+                for (int position : peopleOf(other)) {
+                    boolean wasIms1 = (ims1[position] & (1L << other)) != 0;
+                    Set<Integer> touchedBefore = new TreeSet<>(touchedDays);
+                    Set<String> disturbedBefore = new TreeSet<>(disturbed);
+                    // the rest is checked without the duty which moves
+                    unassign(position, other);
+                    if (canTake(position, day)) {
+                        assign(position, day);
+                        if (fill(other, false)) {
+                            return true;
+                        }
+                        unassign(position, day);
+                    }
+                    assign(position, other);
+                    if (wasIms1) {
+                        ims1[position] |= 1L << other;
+                    }
+                    touchedDays.retainAll(touchedBefore);
+                    disturbed.retainAll(disturbedBefore);
+                }
+            }
+        }
+        return false;
+    }
+
+    private void setRoles(int day) {
+        List<Integer> people = peopleOf(day);
+        if (people.size() != 2) {
+            return;
+        }
+        int first = people.get(0);
+        int second = people.get(1);
+        boolean firstIsIms1 = (ims1[first] & (1L << day)) != 0;
+        boolean secondIsIms1 = (ims1[second] & (1L << day)) != 0;
+        if (firstIsIms1 != secondIsIms1
+                && validator.canBeIms1(firstIsIms1 ? first : second, day)
+                && validator.canBeIms2(firstIsIms1 ? second : first, day)) {
+            return;
+        }
+        ims1[first] &= ~(1L << day);
+        ims1[second] &= ~(1L << day);
+        // the one with fewer hours gets IMS1 if both can be
+        boolean firstFirst = validator.canBeIms1(first, day) && validator.canBeIms2(second, day)
+                && (!validator.canBeIms1(second, day) || !validator.canBeIms2(first, day) || standby[first] <= standby[second]);
+        ims1[firstFirst ? first : second] |= 1L << day;
+    }
+
+    private ScheduleSnapshot toSnapshot() {
+        Map<Integer, Set<String>> scheduled = new HashMap<>();
+        Map<Integer, String> foNames = new HashMap<>();
+        List<String> names = validator.getNames();
+        for (int day = 1; day <= numOfDays; day++) {
+            Set<String> dayNames = new LinkedHashSet<>();
+            for (int position : peopleOf(day)) {
+                dayNames.add(names.get(position));
+                if ((ims1[position] & (1L << day)) != 0) {
+                    foNames.put(day, names.get(position));
+                }
+            }
+            scheduled.put(day, dayNames);
+        }
+        return ScheduleSnapshot.create(previous.getDate(), scheduled, foNames,
+                previous.getHolidays(), previous.getSaturdays(), previous.getSundays(), persons);
+    }
+}
@@ -0,0 +1,534 @@
+package hu.finominfo.scheduler.scheduler;
+
+import hu.finominfo.scheduler.people.People;
+import hu.finominfo.scheduler.people.Person;
+import hu.finominfo.scheduler.people.Type;
+import hu.finominfo.scheduler.util.WorkCalendar;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.DayOfWeek;
+import java.time.LocalDate;
+import java.util.*;
+import java.util.stream.Collectors;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+/**
+ * Immutable binary snapshot of a solved month. This is the primary store of a schedule, the CSV, TXT and XLSX
+ * outputs are rendered from it.
+ * <p>
+ * Layout (version 2, big endian):
+ * <pre>
+ * header:  magic (int), version (short), year (short), month (byte), number of days (byte), number of people (short)
+ * people:  name (short length + UTF-8 bytes), flags (byte), manual day difference (byte),
+ *          hated, wanted, FO only and BO only days (4 x long, bit n is day n),
+ *          minimum rest, maximum duties and the length of their window (3 x byte, 0 is no rule)
+ * days:    for every day of the month: first person (short), second person (short), flags (byte)
+ * </pre>
+ * People are stored in name order, a person is referred by its position, -1 means nobody.
+ */
+public class ScheduleSnapshot {
+
+    public static final int MAGIC = 0x53434844; // "SCHD"
+    public static final int VERSION = 2;
+
+    public static final int DAY_HOLIDAY = 1;
+    public static final int DAY_SATURDAY = 2;
+    public static final int DAY_SUNDAY = 4;
+    public static final int DAY_FIRST_IS_IMS1 = 8;
+    public static final int DAY_SECOND_IS_IMS1 = 16;
+
+    public static final int PERSON_NOFO = 1;
+
+    private static final int HEADER_SIZE = 12;
+    private static final int PERSON_FIXED_SIZE = 2 + 4 * 8 + 3;
+    private static final int DAY_SIZE = 5;
+
+    private final ByteBuffer buffer;
+    private final int year;
+    private final int month;
+    private final int numOfDays;
+    private final List<String> names;
+    private final Map<String, Integer> positions = new HashMap<>();
+    private final int[] personOffsets;
+    private final int daysOffset;
+
+    private ScheduleSnapshot(ByteBuffer buffer) throws IOException {
+        this.buffer = buffer;
+        if (buffer.getInt(0) != MAGIC) {
+            throw new IOException("Not a schedule snapshot");
+        }
+        if (buffer.getShort(4) != VERSION) {
+            throw new IOException("Unsupported schedule snapshot version: " + buffer.getShort(4));
+        }
+        year = buffer.getShort(6);
+        month = buffer.get(8);
+        numOfDays = buffer.get(9);
+        int numOfPeople = buffer.getShort(10);
+        List<String> names = new ArrayList<>(numOfPeople);
+        personOffsets = new int[numOfPeople];
+        int offset = HEADER_SIZE;
+        for (int i = 0; i < numOfPeople; i++) {
+            int length = buffer.getShort(offset);
+            byte[] name = new byte[length];
+            buffer.get(offset + 2, name);
+            names.add(new String(name, UTF_8));
+            positions.put(names.get(i), i);
+            personOffsets[i] = offset + 2 + length;
+            offset = personOffsets[i] + PERSON_FIXED_SIZE;
+        }
+        this.names = Collections.unmodifiableList(names);
+        daysOffset = offset;
+    }
+
+    public static ScheduleSnapshot of(Scheduler scheduler, People people) {
+        return create(
+                scheduler.getDate(),
+                scheduler.getScheduled(),
+                scheduler.getFoNames(),
+                scheduler.getHolidays(),
+                scheduler.getSaturdays(),
+                scheduler.getSundays(),
+                people.getPeople().values());
+    }
+
+    /**
+     * Snapshot of an archived month, the holidays and weekends are taken from the calendar.
+     */
+    public static ScheduleSnapshot create(
+            LocalDate date,
+            Map<Integer, Set<String>> scheduled,
+            Map<Integer, String> foNames,
+            Collection<Person> persons) {
+        LocalDate first = date.withDayOfMonth(1);
+        WorkCalendar calendar = WorkCalendar.of(first.getYear());
+        List<Integer> holidays = calendar.getHolidays(first.getMonth());
+        List<Integer> saturdays = calendar.getDays(first.getMonth(), DayOfWeek.SATURDAY);
+        List<Integer> sundays = calendar.getDays(first.getMonth(), DayOfWeek.SUNDAY);
+        return create(first, scheduled, foNames, holidays, saturdays, sundays, persons);
+    }
+
+    public static ScheduleSnapshot create(
+            LocalDate date,
+            Map<Integer, Set<String>> scheduled,
+            Map<Integer, String> foNames,
+            Collection<Integer> holidays,
+            Collection<Integer> saturdays,
+            Collection<Integer> sundays,
+            Collection<Person> persons) {
+        int numOfDays = date.lengthOfMonth();
+        List<Person> sorted = persons.stream()
+                .sorted(Comparator.comparing(Person::getName))
+                .collect(Collectors.toList());
+        Map<String, Integer> positions = new HashMap<>();
+        List<byte[]> names = new ArrayList<>();
+        int size = HEADER_SIZE + numOfDays * DAY_SIZE;
+        for (Person person : sorted) {
+            positions.put(person.getName(), positions.size());
+            byte[] name = person.getName().getBytes(UTF_8);
+            names.add(name);
+            size += 2 + name.length + PERSON_FIXED_SIZE;
+        }
+        ByteBuffer buffer = ByteBuffer.allocate(size);
+        buffer.putInt(MAGIC);
+        buffer.putShort((short) VERSION);
+        buffer.putShort((short) date.getYear());
+        buffer.put((byte) date.getMonthValue());
+        buffer.put((byte) numOfDays);
+        buffer.putShort((short) sorted.size());
+        for (int i = 0; i < sorted.size(); i++) {
+            Person person = sorted.get(i);
+            buffer.putShort((short) names.get(i).length);
+            buffer.put(names.get(i));
+            buffer.put((byte) (person.isNofo() ? PERSON_NOFO : 0));
+            buffer.put((byte) person.getManualDayDifference().get());
+            buffer.putLong(toMask(person.getHatedDays()));
+            buffer.putLong(toMask(person.getWantedDays()));
+            long foOnly = 0;
+            long boOnly = 0;
+            for (int day = 1; day <= numOfDays; day++) {
+                if (person.getType(day) == Type.FO) {
+                    foOnly |= 1L << day;
+                } else if (person.getType(day) == Type.BO) {
+                    boOnly |= 1L << day;
+                }
+            }
+            buffer.putLong(foOnly);
+            buffer.putLong(boOnly);
+            buffer.put((byte) person.getMinRest());
+            buffer.put((byte) person.getMaxDuties());
+            buffer.put((byte) person.getDutyWindow());
+        }
+        for (int day = 1; day <= numOfDays; day++) {
+            Iterator<String> iterator = scheduled.getOrDefault(day, Collections.emptySet()).iterator();
+            String first = iterator.hasNext() ? iterator.next() : null;
+            String second = iterator.hasNext() ? iterator.next() : null;
+            String foName = foNames.get(day);
+            int flags = 0;
+            if (foName != null && foName.equals(first)) {
+                flags |= DAY_FIRST_IS_IMS1;
+            } else if (foName != null && foName.equals(second)) {
+                flags |= DAY_SECOND_IS_IMS1;
+            }
+            if (holidays.contains(day)) {
+                flags |= DAY_HOLIDAY;
+            }
+            if (saturdays.contains(day)) {
+                flags |= DAY_SATURDAY;
+            }
+            if (sundays.contains(day)) {
+                flags |= DAY_SUNDAY;
+            }
+            buffer.putShort((short) (first == null ? -1 : positions.get(first)));
+            buffer.putShort((short) (second == null ? -1 : positions.get(second)));
+            buffer.put((byte) flags);
+        }
+        buffer.flip();
+        try {
+            return new ScheduleSnapshot(buffer);
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * The same month with other assignments: the people, their constraints and the calendar are copied as they
+     * are, only the days are rewritten. Everybody in the new assignments must be in this snapshot.
+     */
+    public ScheduleSnapshot withAssignments(Map<Integer, ? extends Collection<String>> scheduled,
+                                            Map<Integer, String> foNames) {
+        ByteBuffer copy = ByteBuffer.allocate(daysOffset + numOfDays * DAY_SIZE);
+        ByteBuffer people = buffer.duplicate();
+        people.position(0).limit(daysOffset);
+        copy.put(people);
+        for (int day = 1; day <= numOfDays; day++) {
+            Collection<String> dayNames = scheduled.get(day);
+            Iterator<String> iterator = dayNames == null ? Collections.emptyIterator() : dayNames.iterator();
+            String first = iterator.hasNext() ? iterator.next() : null;
+            String second = iterator.hasNext() ? iterator.next() : null;
+            String foName = foNames.get(day);
+            int flags = getDayFlags(day) & (DAY_HOLIDAY | DAY_SATURDAY | DAY_SUNDAY);
+            if (foName != null && foName.equals(first)) {
+                flags |= DAY_FIRST_IS_IMS1;
+            } else if (foName != null && foName.equals(second)) {
+                flags |= DAY_SECOND_IS_IMS1;
+            }
+            copy.putShort((short) (first == null ? -1 : positionOf(first)));
+            copy.putShort((short) (second == null ? -1 : positionOf(second)));
+            copy.put((byte) flags);
+        }
+        copy.flip();
+        try {
+            return new ScheduleSnapshot(copy);
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private int positionOf(String name) {
+        Integer position = positions.get(name);
+        if (position == null) {
+            throw new IllegalArgumentException(name + " is not in the schedule of " + getDate());
+        }
+        return position;
+    }
+
+    private static long toMask(Collection<Integer> days) {
+        long mask = 0;
+        for (int day : days) {
+            if (day >= 0 && day < 64) {
+                mask |= 1L << day;
+            }
+        }
+        return mask;
+    }
+
+    private static List<Integer> fromMask(long mask) {
+        List<Integer> days = new ArrayList<>();
+        while (mask != 0) {
+            days.add(Long.numberOfTrailingZeros(mask));
+            mask &= mask - 1;
+        }
+        return days;
+    }
+
+    /**
+     * Loads a snapshot without copying: the returned instance reads the memory mapped file directly.
+     */
+    public static ScheduleSnapshot map(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            return new ScheduleSnapshot(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+        }
+    }
+
+    /**
+     * Loads a snapshot into the heap. Unlike map() no mapping is left behind, so the file can be replaced right
+     * away (a mapped file can not be renamed over on Windows).
+     */
+    public static ScheduleSnapshot read(Path path) throws IOException {
+        return new ScheduleSnapshot(ByteBuffer.wrap(Files.readAllBytes(path)));
+    }
+
+    /**
+     * A snapshot of the bytes of {@link #toBytes()}, e.g. received from a worker.
+     */
+    public static ScheduleSnapshot read(byte[] bytes) throws IOException {
+        return new ScheduleSnapshot(ByteBuffer.wrap(bytes));
+    }
+
+    public byte[] toBytes() {
+        ByteBuffer source = buffer.duplicate();
+        source.position(0);
+        byte[] bytes = new byte[source.remaining()];
+        source.get(bytes);
+        return bytes;
+    }
+
+    /**
+     * Writes the snapshot into a temporary file next to the target and renames it over the target, so readers
+     * see either the old or the new month but never a partially written one.
+     */
+    public void write(Path path) throws IOException {
+        Path directory = path.toAbsolutePath().getParent();
+        Path temp = Files.createTempFile(directory, path.getFileName().toString(), ".tmp");
+        try {
+            try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.WRITE)) {
+                ByteBuffer source = buffer.duplicate();
+                source.position(0);
+                while (source.hasRemaining()) {
+                    channel.write(source);
+                }
+                channel.force(true);
+            }
+            try {
+                Files.move(temp, path, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(temp, path, StandardCopyOption.REPLACE_EXISTING);
+            }
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+
+    public static String fileName(LocalDate date, String extension) {
+        return "schedule-" + date.getYear() + "-" + date.getMonthValue() + "." + extension;
+    }
+
+    // --------------------------------------------------------------------------------------------------
+
+    public int getYear() {
+        return year;
+    }
+
+    public int getMonthValue() {
+        return month;
+    }
+
+    public LocalDate getDate() {
+        return LocalDate.of(year, month, 1);
+    }
+
+    public int getNumOfDays() {
+        return numOfDays;
+    }
+
+    public List<String> getNames() {
+        return names;
+    }
+
+    public int getDayFlags(int day) {
+        return buffer.get(daysOffset + (day - 1) * DAY_SIZE + 4);
+    }
+
+    private String getPerson(int day, int slot) {
+        int position = buffer.getShort(daysOffset + (day - 1) * DAY_SIZE + slot * 2);
+        return position < 0 ? null : names.get(position);
+    }
+
+    public String getFoName(int day) {
+        int flags = getDayFlags(day);
+        if ((flags & DAY_FIRST_IS_IMS1) != 0) {
+            return getPerson(day, 0);
+        }
+        if ((flags & DAY_SECOND_IS_IMS1) != 0) {
+            return getPerson(day, 1);
+        }
+        return null;
+    }
+
+    public String getBoName(int day) {
+        int flags = getDayFlags(day);
+        if ((flags & DAY_FIRST_IS_IMS1) != 0) {
+            return getPerson(day, 1);
+        }
+        if ((flags & DAY_SECOND_IS_IMS1) != 0) {
+            return getPerson(day, 0);
+        }
+        return null;
+    }
+
+    public Set<String> getScheduled(int day) {
+        Set<String> scheduled = new LinkedHashSet<>();
+        for (int slot = 0; slot < 2; slot++) {
+            String name = getPerson(day, slot);
+            if (name != null) {
+                scheduled.add(name);
+            }
+        }
+        return scheduled;
+    }
+
+    public Map<Integer, Set<String>> getScheduled() {
+        Map<Integer, Set<String>> scheduled = new HashMap<>();
+        for (int day = 1; day <= numOfDays; day++) {
+            scheduled.put(day, getScheduled(day));
+        }
+        return scheduled;
+    }
+
+    public Map<Integer, String> getFoNames() {
+        Map<Integer, String> foNames = new HashMap<>();
+        for (int day = 1; day <= numOfDays; day++) {
+            String foName = getFoName(day);
+            if (foName != null) {
+                foNames.put(day, foName);
+            }
+        }
+        return foNames;
+    }
+
+    public List<Integer> getScheduledDays(String name) {
+        List<Integer> days = new ArrayList<>();
+        Integer position = positions.get(name);
+        if (position != null) {
+            for (int day = 1; day <= numOfDays; day++) {
+                int offset = daysOffset + (day - 1) * DAY_SIZE;
+                if (buffer.getShort(offset) == position || buffer.getShort(offset + 2) == position) {
+                    days.add(day);
+                }
+            }
+        }
+        return days;
+    }
+
+    private List<Integer> getDays(int flag) {
+        List<Integer> days = new ArrayList<>();
+        for (int day = 1; day <= numOfDays; day++) {
+            if ((getDayFlags(day) & flag) != 0) {
+                days.add(day);
+            }
+        }
+        return days;
+    }
+
+    public List<Integer> getHolidays() {
+        return getDays(DAY_HOLIDAY);
+    }
+
+    public List<Integer> getSaturdays() {
+        return getDays(DAY_SATURDAY);
+    }
+
+    public List<Integer> getSundays() {
+        return getDays(DAY_SUNDAY);
+    }
+
+    public boolean isNofo(String name) {
+        return (buffer.get(personOffsets[positions.get(name)]) & PERSON_NOFO) != 0;
+    }
+
+    public int getManualDayDifference(String name) {
+        return buffer.get(personOffsets[positions.get(name)] + 1);
+    }
+
+    public long getHatedMask(String name) {
+        return buffer.getLong(personOffsets[positions.get(name)] + 2);
+    }
+
+    public long getWantedMask(String name) {
+        return buffer.getLong(personOffsets[positions.get(name)] + 10);
+    }
+
+    public List<Integer> getHatedDays(String name) {
+        return fromMask(getHatedMask(name));
+    }
+
+    public List<Integer> getWantedDays(String name) {
+        return fromMask(getWantedMask(name));
+    }
+
+    /**
+     * @return the free days the person wants between two duties, 0 if there is no rule
+     */
+    public int getMinRest(String name) {
+        return buffer.get(personOffsets[positions.get(name)] + 34);
+    }
+
+    /**
+     * @return at most this many duties in any {@link #getDutyWindow(String)} days, 0 if there is no limit
+     */
+    public int getMaxDuties(String name) {
+        return buffer.get(personOffsets[positions.get(name)] + 35);
+    }
+
+    public int getDutyWindow(String name) {
+        return buffer.get(personOffsets[positions.get(name)] + 36);
+    }
+
+    public Type getType(String name, int day) {
+        int offset = personOffsets[positions.get(name)];
+        if ((buffer.getLong(offset + 18) & (1L << day)) != 0) {
+            return Type.FO;
+        }
+        if ((buffer.getLong(offset + 26) & (1L << day)) != 0) {
+            return Type.BO;
+        }
+        return Type.FO_AND_BO;
+    }
+
+    // --------------------------------------------------------------------------------------------------
+
+    /**
+     * The schedule-YYYY-M.csv format: every scheduled day of a person as a wanted day with its FO/BO sign, so it
+     * can be fed back as a config.
+     */
+    public String renderCsv() {
+        StringBuilder csv = new StringBuilder();
+        for (String name : names) {
+            List<Integer> days = getScheduledDays(name);
+            csv.append(name.replaceAll(" ", "_"));
+            days.forEach(day -> csv.append(" w").append(day));
+            days.forEach(day -> csv.append(' ').append(name.equals(getFoName(day)) ? 'f' : 'b').append(day));
+            csv.append(System.lineSeparator());
+        }
+        return csv.toString();
+    }
+
+    public String renderTxt() {
+        StringBuilder txt = new StringBuilder();
+        for (int day = 1; day <= numOfDays; day++) {
+            String foName = getFoName(day);
+            String boName = getBoName(day);
+            if (foName != null && boName != null) {
+                txt.append(day).append(" -> ").append(foName).append(" - ").append(boName);
+                if ((getDayFlags(day) & DAY_HOLIDAY) != 0) {
+                    txt.append(" - Official Holiday");
+                }
+                txt.append(System.lineSeparator());
+            }
+        }
+        for (String name : names) {
+            txt.append(name).append(" - ").append(getScheduledDays(name).size());
+            txt.append(System.lineSeparator());
+        }
+        txt.append(renderCsv());
+        return txt.toString();
+    }
+}
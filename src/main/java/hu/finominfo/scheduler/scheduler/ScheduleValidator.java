@@ -0,0 +1,478 @@
+package hu.finominfo.scheduler.scheduler;
+
+import hu.finominfo.scheduler.people.Person;
+import hu.finominfo.scheduler.people.Type;
+import hu.finominfo.scheduler.util.WorkCalendar;
+
+import java.time.DayOfWeek;
+import java.time.LocalDate;
+import java.util.*;
+
+/**
+ * Checks a roster of a month against the rules the Scheduler follows while building one, so a solved, an
+ * imported or a manually changed roster can be verified the same way. The constraints of every person are
+ * precomputed into day masks (bit n is day n), a roster is turned into masks as well and every rule is a few
+ * bit operations per person, so a check is linear in people + assignments.
+ */
+public class ScheduleValidator {
+
+    public enum Rule {
+        UNKNOWN_PERSON(true, 1000),
+        PEOPLE_PER_DAY(true, 1000),
+        IMS1_PER_DAY(true, 1000),
+        TYPE(true, 1000),
+        HATED_DAY(true, 1000),
+        MIN_REST(true, 1000),
+        MAX_DUTIES(true, 1000),
+        WANTED_DAY(false, 100),
+        ADJACENT_DAYS(false, 20),
+        WEEKEND_SPACING(false, 10);
+
+        private final boolean hard;
+        private final int cost;
+
+        Rule(boolean hard, int cost) {
+            this.hard = hard;
+            this.cost = cost;
+        }
+
+        public boolean isHard() {
+            return hard;
+        }
+
+        public int getCost() {
+            return cost;
+        }
+    }
+
+    public static class Violation {
+        private final Rule rule;
+        private final int day;
+        private final String name;
+        private final String message;
+
+        public Violation(Rule rule, int day, String name, String message) {
+            this.rule = rule;
+            this.day = day;
+            this.name = name;
+            this.message = message;
+        }
+
+        public Rule getRule() {
+            return rule;
+        }
+
+        /**
+         * @return the day of the month, 0 if the violation is not bound to a day
+         */
+        public int getDay() {
+            return day;
+        }
+
+        /**
+         * @return the person, null if the violation is not bound to a person
+         */
+        public String getName() {
+            return name;
+        }
+
+        public boolean isHard() {
+            return rule.isHard();
+        }
+
+        public int getCost() {
+            return rule.getCost();
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof Violation)) {
+                return false;
+            }
+            Violation violation = (Violation) o;
+            return rule == violation.rule && day == violation.day && Objects.equals(name, violation.name);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(rule, day, name);
+        }
+
+        @Override
+        public String toString() {
+            return (day > 0 ? "day " + day + ": " : "") + message;
+        }
+    }
+
+    private final LocalDate date;
+    private final int numOfDays;
+    private final long monthMask;
+    private final long weekendMask;
+    private final int[] weekendOfDay;
+    private final Map<String, Integer> positions = new HashMap<>();
+    private final String[] names;
+    private final long[] hated;
+    private final long[] wanted;
+    private final long[] foOnly;
+    private final long[] boOnly;
+    private final int[] minRest;
+    private final int[] maxDuties;
+    private final int[] dutyWindow;
+
+    private ScheduleValidator(LocalDate date, List<String> names, long weekendMask) {
+        this.date = date.withDayOfMonth(1);
+        this.numOfDays = date.lengthOfMonth();
+        this.monthMask = ((1L << (numOfDays + 1)) - 1) & ~1L;
+        this.weekendMask = weekendMask;
+        // weekends are numbered from 1 in the order of the month, a Sunday after a Saturday is the same weekend
+        weekendOfDay = new int[numOfDays + 2];
+        int weekend = 0;
+        for (int day = 1; day <= numOfDays; day++) {
+            if ((weekendMask & (1L << day)) != 0) {
+                if ((weekendMask & (1L << (day - 1))) == 0) {
+                    weekend++;
+                }
+                weekendOfDay[day] = weekend;
+            }
+        }
+        this.names = names.toArray(new String[0]);
+        for (int i = 0; i < this.names.length; i++) {
+            positions.put(this.names[i], i);
+        }
+        hated = new long[this.names.length];
+        wanted = new long[this.names.length];
+        foOnly = new long[this.names.length];
+        boOnly = new long[this.names.length];
+        minRest = new int[this.names.length];
+        maxDuties = new int[this.names.length];
+        dutyWindow = new int[this.names.length];
+    }
+
+    /**
+     * Validator with the constraints of the config, Saturdays and Sundays taken from the {@link WorkCalendar}. The weekday
+     * keywords (hmon, hend, wtue, ...) are turned into hated and wanted days the same way as in the Scheduler.
+     */
+    public static ScheduleValidator of(LocalDate date, Collection<Person> persons) {
+        long weekendMask = 0;
+        long[] dayOfWeekMasks = new long[8];
+        LocalDate first = date.withDayOfMonth(1);
+        for (int day = 1; day <= first.lengthOfMonth(); day++) {
+            DayOfWeek dayOfWeek = WorkCalendar.getDayOfWeek(first.withDayOfMonth(day));
+            dayOfWeekMasks[dayOfWeek.getValue()] |= 1L << day;
+            if (dayOfWeek == DayOfWeek.SATURDAY || dayOfWeek == DayOfWeek.SUNDAY) {
+                weekendMask |= 1L << day;
+            }
+        }
+        List<String> names = new ArrayList<>();
+        persons.forEach(person -> names.add(person.getName()));
+        ScheduleValidator validator = new ScheduleValidator(first, names, weekendMask);
+        int i = 0;
+        for (Person person : persons) {
+            for (int day : person.getHatedDays()) {
+                validator.hated[i] |= bit(day);
+            }
+            for (int day : person.getWantedDays()) {
+                validator.wanted[i] |= bit(day);
+            }
+            validator.hated[i] |= hatedWeekdays(person, dayOfWeekMasks);
+            if (person.isWantedTuesdays()) {
+                validator.wanted[i] |= dayOfWeekMasks[DayOfWeek.TUESDAY.getValue()];
+            }
+            for (int day = 1; day <= validator.numOfDays; day++) {
+                if (person.getType(day) == Type.FO) {
+                    validator.foOnly[i] |= 1L << day;
+                } else if (person.getType(day) == Type.BO) {
+                    validator.boOnly[i] |= 1L << day;
+                }
+            }
+            if (person.isNofo()) {
+                validator.boOnly[i] |= validator.monthMask;
+            }
+            validator.minRest[i] = person.getMinRest();
+            validator.maxDuties[i] = person.getMaxDuties();
+            validator.dutyWindow[i] = person.getDutyWindow();
+            i++;
+        }
+        return validator;
+    }
+
+    /**
+     * Validator with the constraints and the calendar stored in the snapshot.
+     */
+    public static ScheduleValidator of(ScheduleSnapshot snapshot) {
+        long weekendMask = 0;
+        for (int day = 1; day <= snapshot.getNumOfDays(); day++) {
+            if ((snapshot.getDayFlags(day) & (ScheduleSnapshot.DAY_SATURDAY | ScheduleSnapshot.DAY_SUNDAY)) != 0) {
+                weekendMask |= 1L << day;
+            }
+        }
+        ScheduleValidator validator = new ScheduleValidator(snapshot.getDate(), snapshot.getNames(), weekendMask);
+        for (int i = 0; i < validator.names.length; i++) {
+            String name = validator.names[i];
+            validator.hated[i] = snapshot.getHatedMask(name);
+            validator.wanted[i] = snapshot.getWantedMask(name);
+            for (int day = 1; day <= validator.numOfDays; day++) {
+                Type type = snapshot.getType(name, day);
+                if (type == Type.FO) {
+                    validator.foOnly[i] |= 1L << day;
+                } else if (type == Type.BO) {
+                    validator.boOnly[i] |= 1L << day;
+                }
+            }
+            if (snapshot.isNofo(name)) {
+                validator.boOnly[i] |= validator.monthMask;
+            }
+            validator.minRest[i] = snapshot.getMinRest(name);
+            validator.maxDuties[i] = snapshot.getMaxDuties(name);
+            validator.dutyWindow[i] = snapshot.getDutyWindow(name);
+        }
+        return validator;
+    }
+
+    private static long hatedWeekdays(Person person, long[] dayOfWeekMasks) {
+        long mask = 0;
+        if (person.isHatesMondays() || person.isHatesWeekdays()) {
+            mask |= dayOfWeekMasks[DayOfWeek.MONDAY.getValue()];
+        }
+        if (person.isHatesTuesdays() || person.isHatesWeekdays()) {
+            mask |= dayOfWeekMasks[DayOfWeek.TUESDAY.getValue()];
+        }
+        if (person.isHatesWednesdays() || person.isHatesWeekdays()) {
+            mask |= dayOfWeekMasks[DayOfWeek.WEDNESDAY.getValue()];
+        }
+        if (person.isHatesThursdays() || person.isHatesWeekdays()) {
+            mask |= dayOfWeekMasks[DayOfWeek.THURSDAY.getValue()];
+        }
+        if (person.isHatesFridays() || person.isHatesWeekdays()) {
+            mask |= dayOfWeekMasks[DayOfWeek.FRIDAY.getValue()];
+        }
+        if (person.isHatesWeekends()) {
+            mask |= dayOfWeekMasks[DayOfWeek.SATURDAY.getValue()] | dayOfWeekMasks[DayOfWeek.SUNDAY.getValue()];
+        }
+        return mask;
+    }
+
+    private static long bit(int day) {
+        return day > 0 && day < 64 ? 1L << day : 0;
+    }
+
+    public List<Violation> validate(ScheduleSnapshot snapshot) {
+        return validate(snapshot.getScheduled(), toSets(snapshot.getFoNames()));
+    }
+
+    private static Map<Integer, Set<String>> toSets(Map<Integer, String> foNames) {
+        Map<Integer, Set<String>> ims1Names = new HashMap<>();
+        foNames.forEach((day, name) -> {
+            if (name != null) {
+                ims1Names.put(day, Set.of(name));
+            }
+        });
+        return ims1Names;
+    }
+
+    /**
+     * @param scheduled the people of every day
+     * @param ims1Names the people marked IMS1 on every day, normally one of the scheduled ones
+     */
+    public List<Violation> validate(Map<Integer, ? extends Collection<String>> scheduled,
+                                    Map<Integer, ? extends Collection<String>> ims1Names) {
+        List<Violation> violations = new ArrayList<>();
+        long[] work = new long[names.length];
+        long[] ims1 = new long[names.length];
+        int[] perDay = new int[numOfDays + 1];
+        int[] ims1PerDay = new int[numOfDays + 1];
+        Set<String> unknown = new TreeSet<>();
+        scheduled.forEach((day, dayNames) -> {
+            if (day < 1 || day > numOfDays) {
+                return;
+            }
+            for (String name : dayNames) {
+                perDay[day]++;
+                Integer position = positions.get(name);
+                if (position == null) {
+                    unknown.add(name);
+                } else {
+                    work[position] |= 1L << day;
+                }
+            }
+        });
+        ims1Names.forEach((day, dayNames) -> {
+            if (day < 1 || day > numOfDays) {
+                return;
+            }
+            for (String name : dayNames) {
+                ims1PerDay[day]++;
+                Integer position = positions.get(name);
+                if (position == null) {
+                    unknown.add(name);
+                } else {
+                    ims1[position] |= 1L << day;
+                }
+            }
+        });
+
+        for (String name : unknown) {
+            violations.add(new Violation(Rule.UNKNOWN_PERSON, 0, name, name + " is not in the config"));
+        }
+        for (int day = 1; day <= numOfDays; day++) {
+            if (perDay[day] != 2) {
+                violations.add(new Violation(Rule.PEOPLE_PER_DAY, day, null, perDay[day] + " people instead of 2"));
+            }
+            if (ims1PerDay[day] != 1) {
+                violations.add(new Violation(Rule.IMS1_PER_DAY, day, null, ims1PerDay[day] + " IMS1 instead of 1"));
+            }
+        }
+        for (int i = 0; i < names.length; i++) {
+            checkPerson(i, work[i], ims1[i], monthMask, violations);
+        }
+        return violations;
+    }
+
+    /**
+     * Checks the rules of one person only, the rules of a day (people and IMS1 per day) are not checked.
+     *
+     * @param position the position of the person, see positionOf
+     * @param work     the days of the person
+     * @param ims1     the days the person is IMS1
+     * @param window   only the violations of these days are reported
+     */
+    public void checkPerson(int position, long work, long ims1, long window, List<Violation> violations) {
+        String name = names[position];
+        long ims2 = work & ~ims1;
+        forEachDay(ims1 & ~work & window, day ->
+                violations.add(new Violation(Rule.IMS1_PER_DAY, day, name, name + " is IMS1 but not scheduled")));
+        forEachDay(ims1 & boOnly[position] & window, day ->
+                violations.add(new Violation(Rule.TYPE, day, name, name + " can only be IMS2")));
+        forEachDay(ims2 & foOnly[position] & window, day ->
+                violations.add(new Violation(Rule.TYPE, day, name, name + " can only be IMS1")));
+        forEachDay(work & hated[position] & window, day ->
+                violations.add(new Violation(Rule.HATED_DAY, day, name, name + " hates this day")));
+        forEachDay(wanted[position] & monthMask & ~work & window, day ->
+                violations.add(new Violation(Rule.WANTED_DAY, day, name, name + " wanted this day")));
+        forEachDay(work & (work >>> 1) & window, day ->
+                violations.add(new Violation(Rule.ADJACENT_DAYS, day, name, name + " is scheduled on the next day too")));
+        // reported on the later duty
+        long tooClose = 0;
+        for (int distance = 1; distance <= minRest[position]; distance++) {
+            tooClose |= work & (work << distance);
+        }
+        forEachDay(tooClose & window, day -> violations.add(new Violation(Rule.MIN_REST, day, name,
+                name + " wants " + minRest[position] + " free days between duties")));
+        // reported on the last duty of a window with too many duties
+        forEachDay(tooManyDuties(position, work) & window, day -> violations.add(new Violation(Rule.MAX_DUTIES, day,
+                name, name + " wants at most " + maxDuties[position] + " duties in " + dutyWindow[position] + " days")));
+        long weekends = 0;
+        long weekendWork = work & weekendMask;
+        while (weekendWork != 0) {
+            weekends |= 1L << weekendOfDay[Long.numberOfTrailingZeros(weekendWork)];
+            weekendWork &= weekendWork - 1;
+        }
+        // reported on the first day of the second weekend
+        forEachDay(weekends & (weekends << 1), weekend -> {
+            int day = firstDayOfWeekend(weekend);
+            if ((window & (1L << day)) != 0) {
+                violations.add(new Violation(Rule.WEEKEND_SPACING, day, name,
+                        name + " is scheduled on two weekends in a row"));
+            }
+        });
+    }
+
+    /**
+     * @return the days which end a window of the limit of the person with more duties than the limit
+     */
+    private long tooManyDuties(int position, long work) {
+        if (maxDuties[position] == 0 || dutyWindow[position] == 0) {
+            return 0;
+        }
+        int length = dutyWindow[position];
+        long windowMask = (1L << length) - 1;
+        long over = 0;
+        for (long days = work; days != 0; days &= days - 1) {
+            int day = Long.numberOfTrailingZeros(days);
+            int start = day - length + 1;
+            long window = start >= 0 ? windowMask << start : windowMask >>> -start;
+            if (Long.bitCount(work & window) > maxDuties[position]) {
+                over |= 1L << day;
+            }
+        }
+        return over;
+    }
+
+    /**
+     * @return the number of days around a duty which the rules of the person look at, at least the given days
+     */
+    public int getReach(int position, int days) {
+        return Math.max(days, Math.max(minRest[position], dutyWindow[position]));
+    }
+
+    /**
+     * @return the position of the person in this validator, -1 if the person is unknown
+     */
+    public int positionOf(String name) {
+        return positions.getOrDefault(name, -1);
+    }
+
+    public long getMonthMask() {
+        return monthMask;
+    }
+
+    public List<String> getNames() {
+        return Arrays.asList(names);
+    }
+
+    public boolean isHated(int position, int day) {
+        return (hated[position] & (1L << day)) != 0;
+    }
+
+    public boolean canBeIms1(int position, int day) {
+        return (boOnly[position] & (1L << day)) == 0;
+    }
+
+    public boolean canBeIms2(int position, int day) {
+        return (foOnly[position] & (1L << day)) == 0;
+    }
+
+    private int firstDayOfWeekend(int weekend) {
+        for (int day = 1; day <= numOfDays; day++) {
+            if (weekendOfDay[day] == weekend) {
+                return day;
+            }
+        }
+        return 0;
+    }
+
+    private interface DayConsumer {
+        void accept(int day);
+    }
+
+    private static void forEachDay(long mask, DayConsumer consumer) {
+        while (mask != 0) {
+            consumer.accept(Long.numberOfTrailingZeros(mask));
+            mask &= mask - 1;
+        }
+    }
+
+    public static int cost(List<Violation> violations) {
+        int cost = 0;
+        for (Violation violation : violations) {
+            cost += violation.getCost();
+        }
+        return cost;
+    }
+
+    public static boolean hasHard(List<Violation> violations) {
+        for (Violation violation : violations) {
+            if (violation.isHard()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    public LocalDate getDate() {
+        return date;
+    }
+}
@@ -2,15 +2,13 @@ package hu.finominfo.scheduler.scheduler;
 
 import hu.finominfo.scheduler.people.Person;
 import hu.finominfo.scheduler.people.Type;
-import hu.finominfo.scheduler.util.HungarianHolidays;
+import hu.finominfo.scheduler.util.WorkCalendar;
 
 import java.time.LocalDate;
-import java.time.Month;
 import java.util.*;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.stream.Collectors;
 
-import hu.finominfo.scheduler.util.KeyValueStore;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 
@@ -19,7 +17,9 @@ public class Scheduler {
 
     private static final Logger LOGGER = LogManager.getLogger(Scheduler.class);
 
-    private final Random random = new Random(System.currentTimeMillis());
+    private final Random random;
+    private final AvailabilityRegistry.Booking booking;
+    private final RestRules rules;
 
     private final Map<String, Person> people;
     private final Map<Integer, String> foNames = new HashMap<>();
@@ -37,27 +37,32 @@ public class Scheduler {
     private final LocalDate localDate;
     List<Type> foAbleTypes = Arrays.asList(Type.FO, Type.FO_AND_BO);
 
-    private final KeyValueStore keyValueStore;
-
     public Scheduler(Map<String, Person> people, LocalDate date) {
+        this(people, date, System.currentTimeMillis());
+    }
+
+    /**
+     * @param seed the seed of the random choices, the same people, date and seed give the same month
+     */
+    public Scheduler(Map<String, Person> people, LocalDate date, long seed) {
+        this(people, date, seed, null);
+    }
+
+    /**
+     * @param booking the days of the people in the other teams solved at the same time, null if there are none
+     */
+    public Scheduler(Map<String, Person> people, LocalDate date, long seed, AvailabilityRegistry.Booking booking) {
+        this.random = new Random(seed);
+        this.booking = booking;
         this.people = people;
+        this.rules = new RestRules(people.values());
         this.numOfDays = date.lengthOfMonth();
         for (int i = -8; i < numOfDays + 10; i++) {
             scheduled.put(i, new HashSet<>());
             hated.put(i, new HashSet<>());
         }
         this.localDate = date.withDayOfMonth(1);
-        int year = date.getYear();
-        Month month = date.getMonth();
-        this.holidays.addAll(
-                HungarianHolidays
-                        .getHolidaysForMonth(year, month)
-                        .stream()
-                        .map(LocalDate::getDayOfMonth)
-                        .collect(Collectors.toList()));
-
-        keyValueStore = new KeyValueStore();
-        //keyValueStore.createDatabase();
+        this.holidays.addAll(WorkCalendar.of(date.getYear()).getHolidays(date.getMonth()));
 
         countDays();
         setHated();
@@ -68,10 +73,6 @@ public class Scheduler {
         balanceIMS();
     }
 
-    public KeyValueStore getKeyValueStore() {
-        return keyValueStore;
-    }
-
 
 
     private void balanceIMS() {
@@ -204,7 +205,8 @@ public class Scheduler {
                         final Set<String> possibleNames = new HashSet<>();
                         possibleNames.addAll(people.keySet());
                         possibleNames.removeAll(set);
-                        scheduled.get(entry.getKey()).addAll(possibleNames);
+                        possibleNames.forEach(name -> reserveOrFail(name, entry.getKey()));
+                        possibleNames.forEach(name -> assign(name, entry.getKey()));
                         if (scheduled.get(entry.getKey()).size() == 2) {
                             foNames.put(entry.getKey(), selectFo(scheduled.get(entry.getKey()), entry.getKey()));
                         }
@@ -244,12 +246,10 @@ public class Scheduler {
             return name1;
         }
         if (person1.getType(day).equals(Type.FO) && person2.getType(day).equals(Type.FO)) {
-            LOGGER.error("Both people wants to be IMS1 on the same day " + names);
-            System.exit(0);
+            throw new RuntimeException("Both people wants to be IMS1 on the same day " + names);
         }
         if (person1.getType(day).equals(Type.BO) && person2.getType(day).equals(Type.BO)) {
-            LOGGER.error("Both people wants to be IMS2 on the same day " + names);
-            System.exit(0);
+            throw new RuntimeException("Both people wants to be IMS2 on the same day " + names);
         }
         return getIMS1Value(name1) < getIMS1Value(name2) ? name1 : name2;
         //return random.nextInt(2) == 0 ? name1 : name2;
@@ -265,10 +265,10 @@ public class Scheduler {
                         .getWantedDays()
                         .forEach(wantedDay -> {
                             Set<String> set = scheduled.get(wantedDay);
-                            set.add(entry.getKey());
+                            reserveOrFail(entry.getKey(), wantedDay);
+                            assign(entry.getKey(), wantedDay);
                             if (set.size() > 2) {
-                                LOGGER.error("More than two people want the same day: " + set);
-                                System.exit(1);
+                                throw new RuntimeException("More than two people want the same day: " + set);
                             }
                             if (set.size() == 2) {
                                 if (set
@@ -345,6 +345,8 @@ public class Scheduler {
         possibleDays1
             .stream()
             .filter(day -> scheduled.get(day).size() < 2)
+            .filter(day -> isFree(person.getName(), day))
+            .filter(day -> rules.allows(person.getName(), day, RestRules.NO_REST))
             .forEach(possibleDays::add);
         if (num.get() > 0) {
             if (possibleDays.size() < num.get()) {
@@ -352,9 +354,16 @@ public class Scheduler {
                         "Not enough days for " + person.getName() + " to work on " + dayName + "s.");
             }
             do {
+                if (possibleDays.isEmpty()) {
+                    throw new RuntimeException(
+                            "Not enough days for " + person.getName() + " to work on " + dayName + "s.");
+                }
                 int day = possibleDays.get(random.nextInt(possibleDays.size()));
-                if (!scheduled.get(day).contains(person.getName())) {
-                    scheduled.get(day).add(person.getName());
+                if (!rules.allows(person.getName(), day, RestRules.NO_REST) || !reserve(person.getName(), day)) {
+                    // too close to the days picked before or taken by another team meanwhile
+                    possibleDays.remove(Integer.valueOf(day));
+                } else if (!scheduled.get(day).contains(person.getName())) {
+                    assign(person.getName(), day);
                     if (getFoNames().get(day) == null || getFoNames().get(day).isEmpty()) {
                         String p = new ArrayList<>(scheduled.get(day)).get(random.nextInt(scheduled.get(day).size()));
                         foNames.put(day, p);
@@ -368,36 +377,32 @@ public class Scheduler {
     // --------------------------------------------------------------------------------------------------
 
     private void countDays() {
-        LocalDate result = localDate;
-        while (result.getMonthValue() == localDate.getMonthValue()) {
-            if (result.getYear() == 2024 && result.getMonthValue() == 8 && result.getDayOfMonth() == 3) {
-                mondays.add(result.getDayOfMonth());
-            } else if (result.getYear() == 2024 && result.getMonthValue() == 8 && result.getDayOfMonth() == 19) {
-                saturdays.add(result.getDayOfMonth());
-            } else switch (result.getDayOfWeek()) {
+        WorkCalendar calendar = WorkCalendar.of(localDate.getYear());
+        int offset = localDate.getDayOfYear() - 1;
+        for (int day = 1; day <= numOfDays; day++) {
+            switch (calendar.getDayOfWeek(offset + day)) {
                 case MONDAY:
-                    mondays.add(result.getDayOfMonth());
+                    mondays.add(day);
                     break;
                 case TUESDAY:
-                    tuesdays.add(result.getDayOfMonth());
+                    tuesdays.add(day);
                     break;
                 case WEDNESDAY:
-                    wednesdays.add(result.getDayOfMonth());
+                    wednesdays.add(day);
                     break;
                 case THURSDAY:
-                    thursdays.add(result.getDayOfMonth());
+                    thursdays.add(day);
                     break;
                 case FRIDAY:
-                    fridays.add(result.getDayOfMonth());
+                    fridays.add(day);
                     break;
                 case SATURDAY:
-                    saturdays.add(result.getDayOfMonth());
+                    saturdays.add(day);
                     break;
                 case SUNDAY:
-                    sundays.add(result.getDayOfMonth());
+                    sundays.add(day);
                     break;
             }
-            result = result.plusDays(1);
         }
     }
 
@@ -410,7 +415,7 @@ public class Scheduler {
                 int day = dayPersons.getKey();
                 List<String> orderedPersons = getWeekendOrderedPossibilities(day);
                 if (scheduled.get(day).isEmpty()) {
-                    scheduled.get(day).add(orderedPersons.get(0));
+                    addFirstFree(orderedPersons, day);
                 }
                 Person firstPerson = people.get(scheduled.get(day).iterator().next());
                 findFirstGoodFor(firstPerson, orderedPersons, day);
@@ -435,24 +440,8 @@ public class Scheduler {
                         .stream()
                         .forEach(name -> {
                             if (persons.contains(name)) {
-                                scheduleNumbers.put(name, scheduleNumbers.get(name) + 14);
-                                if (scheduled.get(saturdayNumber - 2).contains(name) ||
-                                        scheduled.get(saturdayNumber + 3).contains(name)) {
-                                    scheduleNumbers.put(name, scheduleNumbers.get(name) + 4);
-                                }
-                                if (scheduled.get(saturdayNumber - 3).contains(name) ||
-                                        scheduled.get(saturdayNumber + 4).contains(name)) {
-                                    scheduleNumbers.put(name, scheduleNumbers.get(name) + 2);
-                                }
-                                if (scheduled.get(saturdayNumber - 7).contains(name) ||
-                                        scheduled.get(saturdayNumber + 7).contains(name)) {
-                                    scheduleNumbers.put(name, scheduleNumbers.get(name) + 1000);
-                                }
-
-                                if (scheduled.get(saturdayNumber - 6).contains(name) ||
-                                        scheduled.get(saturdayNumber + 8).contains(name)) {
-                                    scheduleNumbers.put(name, scheduleNumbers.get(name) + 1000);
-                                }
+                                scheduleNumbers.put(name, scheduleNumbers.get(name) + 14
+                                        + rules.getPenalty(name, saturdayNumber, RestRules.WEEKEND_PENALTIES));
                             }
                         }));
         return orderScheduleNumbers(scheduleNumbers);
@@ -460,8 +449,6 @@ public class Scheduler {
 
     private Set<String> getWeekendPossibilities(int saturdayNumber) {
         int sundayNumber = saturdayNumber + 1;
-        int fridayNumber = saturdayNumber - 1;
-        int mondayNumber = saturdayNumber + 2;
 
         final Set<String> possibilities = new HashSet<>();
         possibilities.addAll(people.keySet());
@@ -469,8 +456,8 @@ public class Scheduler {
         possibilities.removeAll(hated.get(saturdayNumber));
         possibilities.removeAll(hated.get(sundayNumber));
 
-        possibilities.removeAll(scheduled.get(fridayNumber));
-        possibilities.removeAll(scheduled.get(mondayNumber));
+        possibilities.removeIf(name -> !rules.allows(name, saturdayNumber, RestRules.WEEKEND_REST));
+        possibilities.removeIf(name -> !isFree(name, saturdayNumber));
         return possibilities;
     }
 
@@ -484,7 +471,7 @@ public class Scheduler {
             List<String> orderedPersons = getTheFewestScheduledPerson(dayPersons);
             int day = dayPersons.getKey();
             if (scheduled.get(day).isEmpty()) {
-                scheduled.get(day).add(orderedPersons.get(0));
+                addFirstFree(orderedPersons, day);
             }
             Person firstPerson = people.get(scheduled.get(day).iterator().next());
             findFirstGoodFor(firstPerson, orderedPersons, day);
@@ -505,8 +492,7 @@ public class Scheduler {
                 Set<String> dayHated = new HashSet<>();
                 dayHated.addAll(hated.get(i));
                 dayHated.addAll(scheduled.get(i));
-                dayHated.addAll(scheduled.get(i - 1));
-                dayHated.addAll(scheduled.get(i + 1));
+                addNotAllowed(dayHated, i, RestRules.WEEKDAY_REST);
                 if (dayHated.size() > mostHated) {
                     mostHated = dayHated.size();
                     position = i;
@@ -515,6 +501,8 @@ public class Scheduler {
                 result2 = new HashSet<>();
                 result2.addAll(people.keySet());
                 result2.removeAll(result);
+                final int day = position;
+                result2.removeIf(name -> !isFree(name, day));
             }
         }
         return new AbstractMap.SimpleEntry<>(position, result2);
@@ -531,8 +519,7 @@ public class Scheduler {
                 Set<String> dayHated = new HashSet<>();
                 dayHated.addAll(hated.get(i));
                 dayHated.addAll(scheduled.get(i));
-                dayHated.addAll(scheduled.get(i - 1));
-                dayHated.addAll(scheduled.get(i + 2));
+                addNotAllowed(dayHated, i, RestRules.WEEKEND_REST);
                 if (dayHated.size() > mostHated) {
                     mostHated = dayHated.size();
                     position = i;
@@ -541,6 +528,8 @@ public class Scheduler {
                 result2 = new HashSet<>();
                 result2.addAll(people.keySet());
                 result2.removeAll(result);
+                final int day = position;
+                result2.removeIf(name -> !isFree(name, day));
             }
         }
         return new AbstractMap.SimpleEntry<>(position, result2);
@@ -560,15 +549,8 @@ public class Scheduler {
                         .stream()
                         .forEach(name -> {
                             if (persons.contains(name)) {
-                                scheduleNumbers.put(name, scheduleNumbers.get(name) + 7);
-                                if (scheduled.get(day - 2).contains(name) ||
-                                        scheduled.get(day + 2).contains(name)) {
-                                    scheduleNumbers.put(name, scheduleNumbers.get(name) + 2);
-                                }
-                                if (scheduled.get(day - 3).contains(name) ||
-                                        scheduled.get(day + 3).contains(name)) {
-                                    scheduleNumbers.put(name, scheduleNumbers.get(name) + 1);
-                                }
+                                scheduleNumbers.put(name, scheduleNumbers.get(name) + 7
+                                        + rules.getPenalty(name, day, RestRules.WEEKDAY_PENALTIES));
                             }
                         }));
         scheduleNumbers
@@ -598,20 +580,56 @@ public class Scheduler {
             final Person person,
             final List<String> orderedPersons,
             final int day) {
-        Optional<String> first = orderedPersons
-                .stream()
-                .filter(name -> !people.get(name).equals(person) &&
-                        people.get(name).getType(day).goodWith(person.getType(day)))
-                .findFirst();
-        if (first.isPresent()) {
-            scheduled.get(day).add(first.get());
-        } else {
-            String strPerson = orderedPersons
-                                    .stream()
-                                    .map(e -> e.toString() + " ")
-                                    .reduce("", String::concat);
-            String message = orderedPersons.isEmpty() ? "I found no person for " + day : "I found only one person (" + strPerson + ") for " + day;
-            throw new RuntimeException(message);
+        for (String name : orderedPersons) {
+            if (!people.get(name).equals(person) &&
+                    people.get(name).getType(day).goodWith(person.getType(day)) &&
+                    reserve(name, day)) {
+                assign(name, day);
+                return;
+            }
+        }
+        String strPerson = orderedPersons
+                                .stream()
+                                .map(e -> e.toString() + " ")
+                                .reduce("", String::concat);
+        String message = orderedPersons.isEmpty() ? "I found no person for " + day : "I found only one person (" + strPerson + ") for " + day;
+        throw new RuntimeException(message);
+    }
+
+    private void addFirstFree(List<String> orderedPersons, int day) {
+        for (String name : orderedPersons) {
+            if (reserve(name, day)) {
+                assign(name, day);
+                return;
+            }
+        }
+        throw new RuntimeException("I found no person for " + day);
+    }
+
+    private void assign(String name, int day) {
+        scheduled.get(day).add(name);
+        rules.assign(name, day);
+    }
+
+    private void addNotAllowed(Set<String> names, int day, RestRules.Near near) {
+        for (String name : people.keySet()) {
+            if (!rules.allows(name, day, near)) {
+                names.add(name);
+            }
+        }
+    }
+
+    private boolean isFree(String name, int day) {
+        return booking == null || booking.isFree(name, day);
+    }
+
+    private boolean reserve(String name, int day) {
+        return booking == null || booking.reserve(name, day);
+    }
+
+    private void reserveOrFail(String name, int day) {
+        if (!reserve(name, day)) {
+            throw new RuntimeException(name + " is on duty in another team on or next to " + day);
         }
     }
 
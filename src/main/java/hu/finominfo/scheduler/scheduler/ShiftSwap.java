@@ -0,0 +1,305 @@
+package hu.finominfo.scheduler.scheduler;
+
+import hu.finominfo.scheduler.util.MonthStatistics;
+import hu.finominfo.scheduler.util.YearToDate;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.*;
+
+/**
+ * Evaluates swaps and handovers of days on a published month without solving it again. Only the people giving
+ * or taking a day are checked, and only on the moved days and their +-7 day neighbourhood (or the rest and the
+ * duty limit of their config, if longer), so an answer takes
+ * microseconds. The result tells whether the change is allowed (it introduces no hard violation), which
+ * violations it introduces or resolves and how it changes the standby hours of the month.
+ */
+public class ShiftSwap {
+
+    private static final int NEIGHBOURHOOD = 7;
+    private static final Object FILE_LOCK = new Object();
+
+    /**
+     * Writes a changed month with all its outputs.
+     */
+    @FunctionalInterface
+    public interface Publisher {
+        void publish(ScheduleSnapshot snapshot) throws IOException;
+    }
+
+    /**
+     * The day goes from one person to the other, with its role.
+     */
+    public static class Move {
+        private final int day;
+        private final String from;
+        private final String to;
+
+        public Move(int day, String from, String to) {
+            this.day = day;
+            this.from = from;
+            this.to = to;
+        }
+
+        public int getDay() {
+            return day;
+        }
+
+        public String getFrom() {
+            return from;
+        }
+
+        public String getTo() {
+            return to;
+        }
+
+        @Override
+        public String toString() {
+            return day + ": " + from + " -> " + to;
+        }
+    }
+
+    public static class Result {
+        private final List<Move> moves;
+        private final boolean feasible;
+        private final String reason;
+        private final List<ScheduleValidator.Violation> introduced;
+        private final List<ScheduleValidator.Violation> resolved;
+        private final Map<String, Double> standbyDelta;
+        private final double spreadBefore;
+        private final double spreadAfter;
+
+        private Result(List<Move> moves, boolean feasible, String reason,
+                       List<ScheduleValidator.Violation> introduced, List<ScheduleValidator.Violation> resolved,
+                       Map<String, Double> standbyDelta, double spreadBefore, double spreadAfter) {
+            this.moves = moves;
+            this.feasible = feasible;
+            this.reason = reason;
+            this.introduced = introduced;
+            this.resolved = resolved;
+            this.standbyDelta = standbyDelta;
+            this.spreadBefore = spreadBefore;
+            this.spreadAfter = spreadAfter;
+        }
+
+        public List<Move> getMoves() {
+            return moves;
+        }
+
+        public boolean isFeasible() {
+            return feasible;
+        }
+
+        /**
+         * @return why the change is not allowed, null if it is
+         */
+        public String getReason() {
+            return reason;
+        }
+
+        public List<ScheduleValidator.Violation> getIntroduced() {
+            return introduced;
+        }
+
+        public List<ScheduleValidator.Violation> getResolved() {
+            return resolved;
+        }
+
+        /**
+         * @return the soft rule cost after minus before, negative if the change improves the month
+         */
+        public int getCostDelta() {
+            return ScheduleValidator.cost(introduced) - ScheduleValidator.cost(resolved);
+        }
+
+        /**
+         * @return the change of the standby hours of the month per person
+         */
+        public Map<String, Double> getStandbyDelta() {
+            return standbyDelta;
+        }
+
+        /**
+         * @return the difference of the most and the least monthly standby hours before the change
+         */
+        public double getSpreadBefore() {
+            return spreadBefore;
+        }
+
+        public double getSpreadAfter() {
+            return spreadAfter;
+        }
+
+        @Override
+        public String toString() {
+            if (!feasible) {
+                return "Not possible: " + reason;
+            }
+            return "Possible, cost delta: " + getCostDelta() + ", introduced: " + introduced + ", resolved: " + resolved
+                    + ", standby delta: " + standbyDelta
+                    + String.format(", standby spread: %.2f -> %.2f", spreadBefore, spreadAfter);
+        }
+    }
+
+    private final ScheduleSnapshot snapshot;
+    private final ScheduleValidator validator;
+    private final double[] dayStandby;
+    private final long[] work;
+    private final long[] ims1;
+    private final double[] standby;
+
+    public ShiftSwap(ScheduleSnapshot snapshot) {
+        this.snapshot = snapshot;
+        this.validator = ScheduleValidator.of(snapshot);
+        MonthStatistics statistics = new MonthStatistics(snapshot);
+        int numOfDays = snapshot.getNumOfDays();
+        dayStandby = new double[numOfDays + 1];
+        for (int day = 1; day <= numOfDays; day++) {
+            dayStandby[day] = YearToDate.getStandby(statistics.getDayKind(day));
+        }
+        List<String> names = snapshot.getNames();
+        work = new long[names.size()];
+        ims1 = new long[names.size()];
+        standby = new double[names.size()];
+        for (int day = 1; day <= numOfDays; day++) {
+            String foName = snapshot.getFoName(day);
+            for (String name : snapshot.getScheduled(day)) {
+                int position = validator.positionOf(name);
+                work[position] |= 1L << day;
+                if (name.equals(foName)) {
+                    ims1[position] |= 1L << day;
+                }
+                standby[position] += dayStandby[day];
+            }
+        }
+    }
+
+    /**
+     * first gives dayOfFirst to second and takes dayOfSecond in exchange, the roles go with the days.
+     */
+    public Result swap(String first, int dayOfFirst, String second, int dayOfSecond) {
+        return check(List.of(new Move(dayOfFirst, first, second), new Move(dayOfSecond, second, first)));
+    }
+
+    /**
+     * to takes the day of from, with its role.
+     */
+    public Result handover(String from, String to, int day) {
+        return check(List.of(new Move(day, from, to)));
+    }
+
+    public Result check(List<Move> moves) {
+        Map<Integer, long[]> changed = new LinkedHashMap<>();
+        long window = 0;
+        for (Move move : moves) {
+            int from = validator.positionOf(move.from);
+            int to = validator.positionOf(move.to);
+            if (from < 0 || to < 0) {
+                return infeasible(moves, (from < 0 ? move.from : move.to) + " is not in the schedule");
+            }
+            if (move.day < 1 || move.day > snapshot.getNumOfDays()) {
+                return infeasible(moves, "There is no day " + move.day + " in " + snapshot.getDate().getMonth());
+            }
+            long bit = 1L << move.day;
+            long[] fromMasks = changed.computeIfAbsent(from, i -> new long[]{work[i], ims1[i]});
+            long[] toMasks = changed.computeIfAbsent(to, i -> new long[]{work[i], ims1[i]});
+            if ((fromMasks[0] & bit) == 0) {
+                return infeasible(moves, move.from + " is not scheduled on " + move.day);
+            }
+            if ((toMasks[0] & bit) != 0) {
+                return infeasible(moves, move.to + " is already scheduled on " + move.day);
+            }
+            fromMasks[0] &= ~bit;
+            toMasks[0] |= bit;
+            if ((fromMasks[1] & bit) != 0) {
+                fromMasks[1] &= ~bit;
+                toMasks[1] |= bit;
+            }
+            int reach = validator.getReach(to, validator.getReach(from, NEIGHBOURHOOD));
+            int lowest = Math.max(1, move.day - reach);
+            int highest = Math.min(snapshot.getNumOfDays(), move.day + reach);
+            window |= ((1L << (highest + 1)) - 1) & -(1L << lowest);
+        }
+
+        List<ScheduleValidator.Violation> before = new ArrayList<>();
+        List<ScheduleValidator.Violation> after = new ArrayList<>();
+        for (Map.Entry<Integer, long[]> entry : changed.entrySet()) {
+            int position = entry.getKey();
+            validator.checkPerson(position, work[position], ims1[position], window, before);
+            validator.checkPerson(position, entry.getValue()[0], entry.getValue()[1], window, after);
+        }
+        List<ScheduleValidator.Violation> introduced = new ArrayList<>(after);
+        introduced.removeAll(before);
+        List<ScheduleValidator.Violation> resolved = new ArrayList<>(before);
+        resolved.removeAll(after);
+
+        Map<String, Double> standbyDelta = new LinkedHashMap<>();
+        double[] standbyAfter = standby.clone();
+        for (Move move : moves) {
+            standbyDelta.merge(move.from, -dayStandby[move.day], Double::sum);
+            standbyDelta.merge(move.to, dayStandby[move.day], Double::sum);
+            standbyAfter[validator.positionOf(move.from)] -= dayStandby[move.day];
+            standbyAfter[validator.positionOf(move.to)] += dayStandby[move.day];
+        }
+        standbyDelta.replaceAll((name, delta) -> Math.round(delta * 100) / 100.0);
+
+        String reason = null;
+        for (ScheduleValidator.Violation violation : introduced) {
+            if (violation.isHard()) {
+                reason = violation.toString();
+                break;
+            }
+        }
+        return new Result(moves, reason == null, reason, introduced, resolved, standbyDelta,
+                spread(standby), spread(standbyAfter));
+    }
+
+    private static Result infeasible(List<Move> moves, String reason) {
+        return new Result(moves, false, reason, List.of(), List.of(), Map.of(), 0, 0);
+    }
+
+    private static double spread(double[] values) {
+        double min = Double.MAX_VALUE;
+        double max = -Double.MAX_VALUE;
+        for (double value : values) {
+            min = Math.min(min, value);
+            max = Math.max(max, value);
+        }
+        return values.length == 0 ? 0 : max - min;
+    }
+
+    /**
+     * @return the month with the moves of the result done
+     */
+    public ScheduleSnapshot apply(Result result) {
+        if (!result.isFeasible()) {
+            throw new IllegalArgumentException("The change is not possible: " + result.getReason());
+        }
+        Map<Integer, Set<String>> scheduled = snapshot.getScheduled();
+        Map<Integer, String> foNames = snapshot.getFoNames();
+        for (Move move : result.getMoves()) {
+            Set<String> names = scheduled.computeIfAbsent(move.day, day -> new LinkedHashSet<>());
+            names.remove(move.from);
+            names.add(move.to);
+            if (move.from.equals(foNames.get(move.day))) {
+                foNames.put(move.day, move.to);
+            }
+        }
+        return snapshot.withAssignments(scheduled, foNames);
+    }
+
+    /**
+     * Checks the moves against the stored month and, if they are possible, publishes the changed month: the
+     * file itself is replaced in one atomic rename, the other outputs, the statistics and the history follow it.
+     */
+    public static Result apply(Path path, List<Move> moves, Publisher publisher) throws IOException {
+        synchronized (FILE_LOCK) {
+            ShiftSwap shiftSwap = new ShiftSwap(ScheduleSnapshot.read(path));
+            Result result = shiftSwap.check(moves);
+            if (result.isFeasible()) {
+                publisher.publish(shiftSwap.apply(result));
+            }
+            return result;
+        }
+    }
+}
@@ -0,0 +1,114 @@
+package hu.finominfo.scheduler.scheduler;
+
+import hu.finominfo.scheduler.people.Person;
+import hu.finominfo.scheduler.people.PersonConfig;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.time.LocalDate;
+import java.util.*;
+
+/**
+ * Everything a worker needs to solve a month of a team: the compiled configs of the people and the days when
+ * they are on duty in other teams. On the wire (big endian):
+ * <pre>
+ * team (UTF), year (short), month (byte), seed (long), number of people (short), the configs,
+ * number of busy people (short), for each: position of the config (short), busy days (long, bit n is day n)
+ * </pre>
+ * The busy days, and the days next to them, are reserved for the other teams in an {@link AvailabilityRegistry}
+ * of the solve, so the hated days of the people stay their own.
+ */
+public class SolveRequest {
+
+    private final String team;
+    private final LocalDate date;
+    private final long seed;
+    private final List<PersonConfig> configs;
+    private final Map<String, Long> busy;
+
+    public SolveRequest(String team, LocalDate date, long seed, List<PersonConfig> configs, Map<String, Long> busy) {
+        this.team = team;
+        this.date = date.withDayOfMonth(1);
+        this.seed = seed;
+        this.configs = configs;
+        this.busy = busy;
+    }
+
+    public String getTeam() {
+        return team;
+    }
+
+    public LocalDate getDate() {
+        return date;
+    }
+
+    public ScheduleSnapshot solve() {
+        List<String> names = new ArrayList<>();
+        configs.forEach(config -> names.add(config.getName()));
+        AvailabilityRegistry registry = new AvailabilityRegistry(date.lengthOfMonth(), names);
+        AvailabilityRegistry.Booking others = registry.open("other teams");
+        busy.forEach((name, mask) -> {
+            for (long rest = mask; rest != 0; rest &= rest - 1) {
+                others.reserve(name, Long.numberOfTrailingZeros(rest));
+            }
+        });
+        Map<String, Person> people = new HashMap<>();
+        configs.forEach(config -> people.put(config.getName(), config.toPerson()));
+        Scheduler scheduler = new Scheduler(people, date, seed, registry.open(team));
+        return ScheduleSnapshot.create(scheduler.getDate(), scheduler.getScheduled(), scheduler.getFoNames(),
+                scheduler.getHolidays(), scheduler.getSaturdays(), scheduler.getSundays(), people.values());
+    }
+
+    public void write(DataOutput out) throws IOException {
+        out.writeUTF(team);
+        out.writeShort(date.getYear());
+        out.writeByte(date.getMonthValue());
+        out.writeLong(seed);
+        out.writeShort(configs.size());
+        Map<String, Integer> positions = new HashMap<>();
+        for (PersonConfig config : configs) {
+            positions.put(config.getName(), positions.size());
+            config.write(out);
+        }
+        List<String> busyNames = new ArrayList<>();
+        busy.forEach((name, mask) -> {
+            if (mask != 0 && positions.containsKey(name)) {
+                busyNames.add(name);
+            }
+        });
+        out.writeShort(busyNames.size());
+        for (String name : busyNames) {
+            out.writeShort(positions.get(name));
+            out.writeLong(busy.get(name));
+        }
+    }
+
+    public static SolveRequest read(DataInput in) throws IOException {
+        String team = in.readUTF();
+        int year = in.readShort();
+        int month = in.readByte();
+        long seed = in.readLong();
+        int numOfPeople = in.readUnsignedShort();
+        List<PersonConfig> configs = new ArrayList<>(numOfPeople);
+        for (int i = 0; i < numOfPeople; i++) {
+            configs.add(PersonConfig.read(in));
+        }
+        int numOfBusy = in.readUnsignedShort();
+        int[] positions = new int[numOfBusy];
+        long[] masks = new long[numOfBusy];
+        for (int i = 0; i < numOfBusy; i++) {
+            positions[i] = in.readUnsignedShort();
+            masks[i] = in.readLong();
+        }
+        Map<String, Long> busy = new HashMap<>();
+        for (int i = 0; i < numOfBusy; i++) {
+            if (positions[i] >= numOfPeople) {
+                throw new IllegalArgumentException("Wrong person in the solve request: " + positions[i]);
+            }
+            busy.put(configs.get(positions[i]).getName(), masks[i]);
+        }
+        LocalDate date = LocalDate.of(year, month, 1);
+        return new SolveRequest(team, date, seed, configs, busy);
+    }
+}
@@ -0,0 +1,245 @@
+package hu.finominfo.scheduler.scheduler;
+
+import hu.finominfo.scheduler.people.ConfigParseException;
+import hu.finominfo.scheduler.people.ConfigParser;
+import hu.finominfo.scheduler.people.Person;
+import hu.finominfo.scheduler.people.PersonConfig;
+import hu.finominfo.scheduler.util.MonthStatistics;
+import hu.finominfo.scheduler.util.YearToDate;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.time.LocalDate;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.stream.Collectors;
+
+/**
+ * Solves a month with many changed configs at the same time, e.g. to see the effect of leave requests before
+ * they are approved. A variant is a few config lines on top of the base config ("Al_Bo h10-15", "Ce nofo"); the
+ * base is parsed once and shared, every solve gets its own people. Every variant is solved with the same seed as
+ * the base, so the differences come from the changed constraints and not from the random choices.
+ */
+public class WhatIfAnalysis {
+
+    private static final Logger LOGGER = LogManager.getLogger(WhatIfAnalysis.class);
+
+    public static class Variant {
+        private final String title;
+        private final String changes;
+
+        /**
+         * @param changes config lines, the expressions of a person are added to their line of the base
+         */
+        public Variant(String title, String changes) {
+            this.title = title;
+            this.changes = changes;
+        }
+
+        public String getTitle() {
+            return title;
+        }
+
+        public String getChanges() {
+            return changes;
+        }
+
+        /**
+         * @param line title: changes, the config lines of the changes separated by ;
+         */
+        public static Variant parse(String line) {
+            int colon = line.indexOf(':');
+            if (colon < 0) {
+                throw new IllegalArgumentException("Variant without title: " + line);
+            }
+            return new Variant(line.substring(0, colon).trim(), line.substring(colon + 1).replace(';', '\n'));
+        }
+    }
+
+    public static class Outcome {
+        private final Variant variant;
+        private final String reason;
+        private final int hardViolations;
+        private final int softCost;
+        private final double standbySpread;
+        private final Map<String, Double> standby;
+        private Outcome baseline;
+
+        private Outcome(Variant variant, String reason, int hardViolations, int softCost, double standbySpread,
+                        Map<String, Double> standby) {
+            this.variant = variant;
+            this.reason = reason;
+            this.hardViolations = hardViolations;
+            this.softCost = softCost;
+            this.standbySpread = standbySpread;
+            this.standby = standby;
+        }
+
+        public Variant getVariant() {
+            return variant;
+        }
+
+        public boolean isFeasible() {
+            return reason == null;
+        }
+
+        /**
+         * @return why the month could not be solved, null if it could
+         */
+        public String getReason() {
+            return reason;
+        }
+
+        public int getHardViolations() {
+            return hardViolations;
+        }
+
+        public int getSoftCost() {
+            return softCost;
+        }
+
+        /**
+         * @return the difference of the most and the least monthly standby hours
+         */
+        public double getStandbySpread() {
+            return standbySpread;
+        }
+
+        public Map<String, Double> getStandby() {
+            return standby;
+        }
+
+        public double getSpreadDelta() {
+            return baseline == null || !baseline.isFeasible() ? 0 : round(standbySpread - baseline.standbySpread);
+        }
+
+        /**
+         * @return the standby hours per person minus the ones of the base, only the changed ones
+         */
+        public Map<String, Double> getStandbyDelta() {
+            Map<String, Double> delta = new TreeMap<>();
+            if (baseline != null && baseline.isFeasible()) {
+                standby.forEach((name, hours) -> {
+                    double change = round(hours - baseline.standby.getOrDefault(name, 0.0));
+                    if (change != 0) {
+                        delta.put(name, change);
+                    }
+                });
+            }
+            return delta;
+        }
+
+        @Override
+        public String toString() {
+            if (!isFeasible()) {
+                return variant.title + ": not possible: " + reason;
+            }
+            return variant.title + ": hard violations: " + hardViolations + ", soft cost: " + softCost
+                    + String.format(", standby spread: %.2f (%+.2f)", standbySpread, getSpreadDelta())
+                    + ", standby delta: " + getStandbyDelta();
+        }
+    }
+
+    private final LocalDate date;
+    private final List<PersonConfig> base;
+    private final Map<String, PersonConfig> baseByName = new LinkedHashMap<>();
+    private final Set<String> names;
+    private final long seed;
+
+    /**
+     * @param names the names of the database, for the new people of the variants
+     */
+    public WhatIfAnalysis(LocalDate date, List<PersonConfig> base, Set<String> names, long seed) {
+        this.date = date.withDayOfMonth(1);
+        this.base = base;
+        this.names = names;
+        this.seed = seed;
+        base.forEach(config -> baseByName.put(config.getName(), config));
+    }
+
+    public List<Outcome> run(List<Variant> variants) {
+        int threads = Math.max(1, Math.min(variants.size() + 1, Runtime.getRuntime().availableProcessors()));
+        ExecutorService executor = Executors.newFixedThreadPool(threads, runnable -> {
+            Thread thread = new Thread(runnable, "what-if");
+            thread.setDaemon(true);
+            return thread;
+        });
+        try {
+            CompletableFuture<Outcome> baseline =
+                    CompletableFuture.supplyAsync(() -> solve(new Variant("base", ""), base), executor);
+            List<CompletableFuture<Outcome>> futures = variants.stream()
+                    .map(variant -> CompletableFuture.supplyAsync(() -> solve(variant), executor))
+                    .collect(Collectors.toList());
+            Outcome baseOutcome = baseline.join();
+            LOGGER.info(baseOutcome);
+            List<Outcome> outcomes = new ArrayList<>();
+            for (CompletableFuture<Outcome> future : futures) {
+                Outcome outcome = future.join();
+                outcome.baseline = baseOutcome;
+                outcomes.add(outcome);
+            }
+            return outcomes;
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * Solves the variant, a variant with a wrong config line is not possible, the others are still solved.
+     */
+    private Outcome solve(Variant variant) {
+        List<PersonConfig> configs;
+        try {
+            configs = apply(variant);
+        } catch (ConfigParseException e) {
+            return new Outcome(variant, e.getMessage(), 0, 0, 0, Map.of());
+        }
+        return solve(variant, configs);
+    }
+
+    private List<PersonConfig> apply(Variant variant) {
+        Map<String, PersonConfig> configs = new LinkedHashMap<>(baseByName);
+        for (PersonConfig changed : ConfigParser.parse(variant.title, variant.changes, names, baseByName)) {
+            configs.put(changed.getName(), changed);
+        }
+        return new ArrayList<>(configs.values());
+    }
+
+    private Outcome solve(Variant variant, List<PersonConfig> configs) {
+        Map<String, Person> people = new HashMap<>();
+        configs.forEach(config -> people.put(config.getName(), config.toPerson()));
+        Scheduler scheduler;
+        try {
+            scheduler = new Scheduler(people, date, seed);
+        } catch (RuntimeException e) {
+            return new Outcome(variant, String.valueOf(e.getMessage()), 0, 0, 0, Map.of());
+        }
+        ScheduleSnapshot snapshot = ScheduleSnapshot.create(date, scheduler.getScheduled(), scheduler.getFoNames(),
+                scheduler.getHolidays(), scheduler.getSaturdays(), scheduler.getSundays(), people.values());
+        List<ScheduleValidator.Violation> violations = ScheduleValidator.of(date, people.values()).validate(snapshot);
+        int hard = (int) violations.stream().filter(ScheduleValidator.Violation::isHard).count();
+        int soft = ScheduleValidator.cost(violations.stream()
+                .filter(violation -> !violation.isHard())
+                .collect(Collectors.toList()));
+
+        MonthStatistics statistics = new MonthStatistics(snapshot);
+        Map<String, Double> standby = new TreeMap<>();
+        people.keySet().forEach(name -> standby.put(name, 0.0));
+        for (int day = 1; day <= snapshot.getNumOfDays(); day++) {
+            double hours = YearToDate.getStandby(statistics.getDayKind(day));
+            for (String name : snapshot.getScheduled(day)) {
+                standby.merge(name, hours, Double::sum);
+            }
+        }
+        standby.replaceAll((name, hours) -> round(hours));
+        double spread = standby.isEmpty() ? 0
+                : Collections.max(standby.values()) - Collections.min(standby.values());
+        return new Outcome(variant, null, hard, soft, round(spread), standby);
+    }
+
+    private static double round(double value) {
+        return Math.round(value * 100) / 100.0;
+    }
+}
@@ -0,0 +1,53 @@
+package hu.finominfo.scheduler.util;
+
+import org.apache.poi.ss.usermodel.*;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Creates every cell style of a workbook only once: the same colour, fill and font colour always gives back
+ * the same CellStyle, so the sheets of a workbook share a small, fixed set of styles.
+ */
+public class CellStylePalette {
+
+    private final Workbook workbook;
+    private final Map<String, CellStyle> styles = new HashMap<>();
+    private final Map<IndexedColors, Font> fonts = new HashMap<>();
+
+    public CellStylePalette(Workbook workbook) {
+        this.workbook = workbook;
+    }
+
+    public CellStyle get(IndexedColors color) {
+        return get(color, FillPatternType.SOLID_FOREGROUND, null);
+    }
+
+    public CellStyle get(IndexedColors color, FillPatternType fillPatternType) {
+        return get(color, fillPatternType, null);
+    }
+
+    public CellStyle get(IndexedColors color, IndexedColors fontColor) {
+        return get(color, FillPatternType.SOLID_FOREGROUND, fontColor);
+    }
+
+    public CellStyle get(IndexedColors color, FillPatternType fillPatternType, IndexedColors fontColor) {
+        String key = color + "/" + fillPatternType + "/" + fontColor;
+        return styles.computeIfAbsent(key, k -> {
+            CellStyle style = workbook.createCellStyle();
+            style.setFillForegroundColor(color.getIndex());
+            style.setFillPattern(fillPatternType);
+            style.setAlignment(HorizontalAlignment.CENTER);
+            style.setVerticalAlignment(VerticalAlignment.CENTER);
+            style.setWrapText(true);
+            if (fontColor != null) {
+                style.setFont(fonts.computeIfAbsent(fontColor, c -> {
+                    Font font = workbook.createFont();
+                    font.setColor(c.getIndex());
+                    return font;
+                }));
+            }
+            return style;
+        });
+    }
+}
@@ -0,0 +1,48 @@
+package hu.finominfo.scheduler.util;
+
+import hu.finominfo.scheduler.scheduler.ScheduleSnapshot;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+/**
+ * Writes schedule-YYYY-M-days.csv, one row per day and role (date,role,name), for tools that can not read the
+ * person per line csv of the scheduler.
+ */
+public class CsvScheduleExporter implements ScheduleExporter {
+
+    @Override
+    public void export(ScheduleSnapshot snapshot, Path directory) throws IOException {
+        Path path = directory.resolve("schedule-" + snapshot.getYear() + "-" + snapshot.getMonthValue() + "-days.csv");
+        try (Writer writer = Files.newBufferedWriter(path, UTF_8)) {
+            writer.write("date,role,name\n");
+            for (int day = 1; day <= snapshot.getNumOfDays(); day++) {
+                String date = snapshot.getDate().withDayOfMonth(day).toString();
+                writeRow(writer, date, "IMS1", snapshot.getFoName(day));
+                writeRow(writer, date, "IMS2", snapshot.getBoName(day));
+            }
+        }
+    }
+
+    private static void writeRow(Writer writer, String date, String role, String name) throws IOException {
+        if (name == null) {
+            return;
+        }
+        writer.write(date);
+        writer.write(',');
+        writer.write(role);
+        writer.write(',');
+        if (name.indexOf(',') < 0 && name.indexOf('"') < 0) {
+            writer.write(name);
+        } else {
+            writer.write('"');
+            writer.write(name.replace("\"", "\"\""));
+            writer.write('"');
+        }
+        writer.write('\n');
+    }
+}
@@ -1,99 +1,123 @@
 package hu.finominfo.scheduler.util;
 
-import hu.finominfo.scheduler.people.People;
-import hu.finominfo.scheduler.people.Person;
-import hu.finominfo.scheduler.scheduler.Scheduler;
+import hu.finominfo.scheduler.common.Globals;
+import hu.finominfo.scheduler.scheduler.ScheduleSnapshot;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 import org.apache.poi.ss.usermodel.*;
 import org.apache.poi.ss.util.CellRangeAddress;
+import org.apache.poi.ss.util.CellReference;
+import org.apache.poi.xssf.streaming.SXSSFWorkbook;
 import org.apache.poi.xssf.usermodel.XSSFWorkbook;
 
-import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.sql.SQLException;
-import java.text.DecimalFormat;
-import java.time.DayOfWeek;
 import java.time.LocalDate;
-import java.time.YearMonth;
-import java.util.ArrayList;
-import java.util.HashSet;
-import java.util.List;
-import java.util.Map;
-import java.util.Set;
-import java.util.stream.Collectors;
-import java.util.stream.IntStream;
+import java.util.*;
 
 public class ExcelExporter {
 
     private static final Logger logger = LogManager.getLogger(ExcelExporter.class);
 
-    private final Scheduler scheduler;
-    private final People people;
+    private final ScheduleSnapshot snapshot;
     private final LocalDate localDate;
 
-    private final DecimalFormat df = new DecimalFormat("#.##");
-    // private final DecimalFormat df = new DecimalFormat("#");
+    static final int ROW_WINDOW = 100;
+    private static final int SUMMARY_COLUMNS = 23;
 
-    public ExcelExporter(Scheduler scheduler, People people, LocalDate localDate) {
-        this.scheduler = scheduler;
-        this.people = people;
-        this.localDate = localDate;
+
+    private final boolean streaming;
+    private final boolean liveFormulas;
+    private final Path directory;
+
+    public ExcelExporter(ScheduleSnapshot snapshot) {
+        this(snapshot, Paths.get(""));
+    }
+
+    /**
+     * Writes into the directory, with the sums of the database of the directory.
+     */
+    public ExcelExporter(ScheduleSnapshot snapshot, Path directory) {
+        this(snapshot, Globals.getInstance().isStreamingExcel(), Globals.getInstance().isExcelFormulas(), directory);
+    }
+
+    /**
+     * @param streaming    write the workbook through SXSSF, only a window of rows is kept in memory
+     * @param liveFormulas the summary row gets SUM formulas besides the precomputed totals
+     */
+    public ExcelExporter(ScheduleSnapshot snapshot, boolean streaming, boolean liveFormulas) {
+        this(snapshot, streaming, liveFormulas, Paths.get(""));
+    }
+
+    public ExcelExporter(ScheduleSnapshot snapshot, boolean streaming, boolean liveFormulas, Path directory) {
+        this.snapshot = snapshot;
+        this.localDate = snapshot.getDate();
+        this.streaming = streaming;
+        this.liveFormulas = liveFormulas;
+        this.directory = directory;
     }
 
     public void writeMonthToExcel() throws IOException {
-        Workbook workbook = new XSSFWorkbook();
-        Sheet sheet = workbook.createSheet("Monthly Schedule");
+        KeyValueStore keyValueStore = new KeyValueStore(directory);
+        Map<String, Map<String, Integer>> previousMonths = keyValueStore.sums(
+                snapshot.getYear(), snapshot.getMonthValue());
+        try {
+            keyValueStore.close();
+        } catch (SQLException e) {
+            logger.error(e);
+        }
+
+        Workbook workbook = streaming ? new SXSSFWorkbook(ROW_WINDOW) : new XSSFWorkbook();
+        writeMonthSheet(workbook.createSheet("Monthly Schedule"), new CellStylePalette(workbook), snapshot,
+                new MonthStatistics(snapshot), previousMonths, liveFormulas);
+        write(workbook, directory.resolve(ScheduleSnapshot.fileName(localDate, "xlsx")));
+    }
 
+    /**
+     * Renders the grid and the summary table of a month into the sheet.
+     *
+     * @param previousMonths the sums of the earlier months of the year per person, see KeyValueStore.sums
+     */
+    static void writeMonthSheet(Sheet sheet, CellStylePalette palette, ScheduleSnapshot snapshot,
+                                MonthStatistics statistics, Map<String, Map<String, Integer>> previousMonths,
+                                boolean liveFormulas) {
+        LocalDate localDate = snapshot.getDate();
         int rowNum = 0;
         int colNum = 0;
 
         // Create a header row with a different color
         Row headerRow = sheet.createRow(rowNum++);
-        CellStyle topLeftCellStyle = getCellStyle(workbook, IndexedColors.BLACK1.getIndex(), FillPatternType.DIAMONDS);
-        CellStyle lightGreyStyle = getCellStyle(workbook, IndexedColors.GREY_25_PERCENT);
-
-        Font headerFont = workbook.createFont();
-        headerFont.setColor(IndexedColors.WHITE.index);
-
-        Font headerWDFont = workbook.createFont();
-        headerWDFont.setColor(IndexedColors.RED.index);
-
-        CellStyle headerCellStyle = getCellStyle(workbook, IndexedColors.BLACK);
-        headerCellStyle.setFont(headerFont);
-        CellStyle headerOrangeCellStyle = getCellStyle(workbook, IndexedColors.ORANGE);
-        CellStyle sumCellStyle = getCellStyle(workbook, IndexedColors.CORAL);
-        CellStyle headerRedCellStyle = getCellStyle(workbook, IndexedColors.RED);
-        CellStyle dataCellStyle = getCellStyle(workbook, IndexedColors.CORAL);
-        CellStyle IMS1Style = getCellStyle(workbook, IndexedColors.PALE_BLUE);
-        CellStyle IMS2Style = getCellStyle(workbook, IndexedColors.LIGHT_YELLOW);
-        CellStyle wdStyle = getCellStyle(workbook, IndexedColors.BLACK);
-        wdStyle.setFont(headerWDFont);
-        CellStyle headerLightOrangeCellStyle = getCellStyle(workbook, IndexedColors.AQUA);
-        CellStyle headerLightGreenCellStyle = getCellStyle(workbook, IndexedColors.LIGHT_GREEN);
-        CellStyle headerBlueGreyCellStyle = getCellStyle(workbook, IndexedColors.GREY_25_PERCENT);
-        CellStyle headerPaleBlueCellStyle = getCellStyle(workbook, IndexedColors.PALE_BLUE);
-        CellStyle headerPinkCellStyle = getCellStyle(workbook, IndexedColors.LIGHT_TURQUOISE);
-        CellStyle basicStyle = getCellStyle(workbook, IndexedColors.TEAL);
+        CellStyle topLeftCellStyle = palette.get(IndexedColors.BLACK1, FillPatternType.DIAMONDS);
+        CellStyle lightGreyStyle = palette.get(IndexedColors.GREY_25_PERCENT);
+        CellStyle headerCellStyle = palette.get(IndexedColors.BLACK, IndexedColors.WHITE);
+        CellStyle headerOrangeCellStyle = palette.get(IndexedColors.ORANGE);
+        CellStyle sumCellStyle = palette.get(IndexedColors.CORAL);
+        CellStyle headerRedCellStyle = palette.get(IndexedColors.RED);
+        CellStyle IMS1Style = palette.get(IndexedColors.PALE_BLUE);
+        CellStyle IMS2Style = palette.get(IndexedColors.LIGHT_YELLOW);
+        CellStyle wdStyle = palette.get(IndexedColors.BLACK, IndexedColors.RED);
+        CellStyle headerLightOrangeCellStyle = palette.get(IndexedColors.AQUA);
+        CellStyle headerLightGreenCellStyle = palette.get(IndexedColors.LIGHT_GREEN);
+        CellStyle headerBlueGreyCellStyle = palette.get(IndexedColors.GREY_25_PERCENT);
+        CellStyle headerPaleBlueCellStyle = palette.get(IndexedColors.PALE_BLUE);
+        CellStyle headerPinkCellStyle = palette.get(IndexedColors.LIGHT_TURQUOISE);
 
         Cell cell = headerRow.createCell(colNum++);
-        LocalDate ld = scheduler.getDate();
+        LocalDate ld = snapshot.getDate();
         cell.setCellValue(ld.getYear() + " " + ld.getMonth().name().substring(0, 3));
         cell.setCellStyle(topLeftCellStyle);
 
-        List<Integer> normalWeekends = new ArrayList<>();
-        normalWeekends.addAll(scheduler.getSaturdays());
-        normalWeekends.addAll(scheduler.getSundays());
-        List<Integer> holidays = new ArrayList<>();
-        holidays.addAll(scheduler.getHolidays());
-
         sheet.setColumnWidth(0, 18 * 256);
-        for (int i = 1; i <= scheduler.getNumOfDays(); i++) {
+        for (int i = 1; i <= snapshot.getNumOfDays(); i++) {
             cell = headerRow.createCell(colNum++);
             cell.setCellValue(i);
-            if (holidays.contains(i)) {
+            if (statistics.isHoliday(i)) {
                 cell.setCellStyle(headerRedCellStyle);
-            } else if (normalWeekends.contains(i)) {
+            } else if (statistics.isWeekend(i)) {
                 cell.setCellStyle(headerOrangeCellStyle);
             } else {
                 cell.setCellStyle(headerCellStyle);
@@ -101,52 +125,49 @@ public class ExcelExporter {
             sheet.setColumnWidth(i, (int) (5 * 256));
         }
 
-        List<String> names = people.getPeople().values().stream().map(Person::getName).sorted()
-                .collect(Collectors.toList());
+        List<String> names = snapshot.getNames();
 
         Row row = sheet.createRow(rowNum++);
         colNum = 0;
         Cell dateCell = row.createCell(colNum++);
         dateCell.setCellStyle(topLeftCellStyle);
-        for (int i = 1; i <= scheduler.getNumOfDays(); i++) {
+        for (int i = 1; i <= snapshot.getNumOfDays(); i++) {
             dateCell = row.createCell(colNum++);
             dateCell.setCellValue(localDate.withDayOfMonth(i).getDayOfWeek().name().toUpperCase().substring(0, 3));
             dateCell.setCellStyle(
-                    holidays.contains(i) ? headerRedCellStyle : normalWeekends.contains(i) ? headerOrangeCellStyle : wdStyle);
+                    statistics.isHoliday(i) ? headerRedCellStyle : statistics.isWeekend(i) ? headerOrangeCellStyle : wdStyle);
         }
 
         for (String name : names) {
-            List<Integer> places = scheduler.getScheduled().entrySet().stream().filter(e -> e.getValue().contains(name))
-                    .map(Map.Entry::getKey).sorted().collect(Collectors.toList());
-            List<Integer> hatedDays = people.getPeople().get(name).getHatedDays();
+            long hatedDays = snapshot.getHatedMask(name);
             row = sheet.createRow(rowNum++);
             colNum = 0;
             dateCell = row.createCell(colNum++);
             dateCell.setCellValue(name);
             dateCell.setCellStyle((rowNum & 1) == 0 ? headerLightGreenCellStyle : headerLightOrangeCellStyle);
             // dateCell.setCellStyle(dataCellStyle);
-            for (int i = 1; i <= scheduler.getNumOfDays(); i++) {
+            for (int i = 1; i <= snapshot.getNumOfDays(); i++) {
                 cell = row.createCell(colNum++);
                 cell.setCellStyle((rowNum & 1) == 0 ? headerLightGreenCellStyle : headerLightOrangeCellStyle);
                 // cell.setCellStyle(basicStyle);
-                if (places.contains(i)) {
-                    String foName = scheduler.getFoNames().get(i);
-                    if (foName == null) {
+                if (statistics.isScheduled(name, i)) {
+                    boolean ims1 = statistics.isIms1(name, i);
+                    if (snapshot.getFoName(i) == null) {
                         cell.setCellValue("NULL");
                     } else {
-                        cell.setCellValue(foName.equals(name) ? "IMS1" : "IMS2");
+                        cell.setCellValue(ims1 ? "IMS1" : "IMS2");
                     }
                     cell.setCellStyle(
                             // weekends.contains(i) ? headerOrangeCellStyle :
-                            (foName.equals(name) ? IMS1Style : IMS2Style));
-                } else if (hatedDays.contains(i)) {
+                            (ims1 ? IMS1Style : IMS2Style));
+                } else if ((hatedDays & (1L << i)) != 0) {
                     cell.setCellValue("X");
                     // cell.setCellStyle(holidays.contains(i) ? headerRedCellStyle :
                     // weekends.contains(i) ? headerOrangeCellStyle : lightGreyStyle);
                     cell.setCellStyle(lightGreyStyle);
-                } else if (holidays.contains(i)) {
+                } else if (statistics.isHoliday(i)) {
                     cell.setCellStyle(headerRedCellStyle);
-                } else if (normalWeekends.contains(i)) {
+                } else if (statistics.isWeekend(i)) {
                     cell.setCellStyle(headerOrangeCellStyle);
                 }
 
@@ -165,11 +186,11 @@ public class ExcelExporter {
         // 1, colNum));
         for (int i = 0; i < 9; i++)
             cell = row.createCell(colNum++);
-        colNum = writeNewCell(colNum, headerLightOrangeCellStyle, row, "" + (scheduler.getLocalDate().getYear()) + " SUMMARIZE");
+        colNum = writeNewCell(colNum, headerLightOrangeCellStyle, row, "" + (snapshot.getDate().getYear()) + " SUMMARIZE");
         sheet.addMergedRegion(new CellRangeAddress(rowNum - 1, rowNum - 1, colNum - 1, colNum + 5));
         for (int i = 0; i < 12; i++)
             cell = row.createCell(colNum++);
-        LocalDate localDatePlusMinus = scheduler.getLocalDate().plusMonths(1).minusDays(1);
+        LocalDate localDatePlusMinus = snapshot.getDate().plusMonths(1).minusDays(1);
         cell.setCellValue("up to " + localDatePlusMinus.getMonth().toString().substring(0, 3) + " "
                 + localDatePlusMinus.getDayOfMonth());
         cell.setCellStyle(headerLightOrangeCellStyle);
@@ -208,252 +229,175 @@ public class ExcelExporter {
 
         // ************************************************************************
 
-        List<Integer> fridays = IntStream.rangeClosed(1, scheduler.getNumOfDays())
-                .filter(i -> localDate.withDayOfMonth(i).getDayOfWeek().equals(DayOfWeek.FRIDAY))
-                .mapToObj(Integer::valueOf)
-                .collect(Collectors.toList());
-
-        List<Integer> sundays = IntStream.rangeClosed(1, scheduler.getNumOfDays())
-                .filter(i -> localDate.withDayOfMonth(i).getDayOfWeek().equals(DayOfWeek.SUNDAY))
-                .mapToObj(Integer::valueOf)
-                .collect(Collectors.toList());
-
-        List<Integer> saturdays = IntStream.rangeClosed(1, scheduler.getNumOfDays())
-                .filter(i -> localDate.withDayOfMonth(i).getDayOfWeek().equals(DayOfWeek.SATURDAY))
-                .mapToObj(Integer::valueOf)
-                .collect(Collectors.toList());
-
-        KeyValueStore keyValueStore = scheduler.getKeyValueStore();
-        int year = scheduler.getDate().getYear();
-        int monthValue = scheduler.getDate().getMonthValue();
-
-        // int year2 = scheduler.getDate().minusMonths(1).getYear();
-        // int monthValue2 = scheduler.getDate().minusMonths(1).getMonthValue();
-
+        double[] totals = new double[SUMMARY_COLUMNS];
         for (String name : names) {
             row = sheet.createRow(rowNum++);
             colNum = 0;
-            colNum = writeNewCell(colNum, (rowNum & 1) == 0 ? headerLightGreenCellStyle : headerLightOrangeCellStyle,
-                    row, name);
+            CellStyle rowStyle = (rowNum & 1) == 0 ? headerLightGreenCellStyle : headerLightOrangeCellStyle;
+            colNum = writeNewCell(colNum, rowStyle, row, name);
             // colNum = writeNewCell(colNum, dataCellStyle, row, name);
-            List<Integer> scheduled = scheduler.getScheduled().entrySet().stream()
-                    .filter(e -> e.getValue().contains(name))
-                    .map(e2 -> e2.getKey())
-                    .collect(Collectors.toList());
-            long numOfFridays = scheduled.stream().filter(fridays::contains)
-                    .filter(s2 -> !scheduler.getHolidays().contains(s2)).count();
-            long numOfSaturdays = scheduled.stream().filter(saturdays::contains)
-                    .filter(s2 -> !scheduler.getHolidays().contains(s2)).count();
-            long numOfSundays = scheduled.stream().filter(sundays::contains)
-                    .filter(s2 -> !scheduler.getHolidays().contains(s2)).count();
-            long numOfFridayHolidays = scheduled.stream()
-                    .filter(s -> scheduler.getHolidays().contains(s))
-                    .filter(fridays::contains)
-                    .count();
-            long numOfSaturdayHolidays = scheduled.stream()
-                    .filter(s -> scheduler.getHolidays().contains(s))
-                    .filter(saturdays::contains)
-                    .count();
-            long numOfSundayHolidays = scheduled.stream()
-                    .filter(s -> scheduler.getHolidays().contains(s))
-                    .filter(sundays::contains)
-                    .count();
-            long numOfWeekdayHolidays = scheduled.stream()
-                    .filter(s -> scheduler.getHolidays().contains(s))
-                    .filter(s1 -> !fridays.contains(s1))
-                    .filter(s2 -> !saturdays.contains(s2))
-                    .filter(s3 -> !sundays.contains(s3))
-                    .count();
-            long numOfHolidays = numOfFridayHolidays + numOfSaturdayHolidays + numOfSundayHolidays + numOfWeekdayHolidays;        
-            List<Integer> ims1Scheduled = scheduler.getFoNames().entrySet().stream()
-                    .filter(e -> e.getValue().contains(name))
-                    .map(e2 -> e2.getKey())
-                    .collect(Collectors.toList());
-            List<Integer> ims2Scheduled = scheduled.stream()
-                    .filter(s -> !ims1Scheduled.contains(s))
-                    .collect(Collectors.toList());
-            long ims1Weekend = ims1Scheduled.stream().filter(s -> normalWeekends.contains(s)).count();
-            
-            long ims1Weekday = ims1Scheduled.size() - ims1Weekend;
-            long ims2Weekend = ims2Scheduled.stream().filter(s -> normalWeekends.contains(s)).count();
-            long ims2Weekday = ims2Scheduled.size() - ims2Weekend;
-            colNum = writeNewCell(colNum, (rowNum & 1) == 0 ? headerLightGreenCellStyle : headerLightOrangeCellStyle,
-                    row, "" + ims1Weekend);
-            colNum = writeNewCell(colNum, (rowNum & 1) == 0 ? headerLightGreenCellStyle : headerLightOrangeCellStyle,
-                    row, "" + ims1Weekday);
-            colNum = writeNewCell(colNum, (rowNum & 1) == 0 ? headerLightGreenCellStyle : headerLightOrangeCellStyle,
-                    row, "" + ims2Weekend);
-            colNum = writeNewCell(colNum, (rowNum & 1) == 0 ? headerLightGreenCellStyle : headerLightOrangeCellStyle,
-                    row, "" + ims2Weekday);
-            colNum = writeNewCell(colNum, (rowNum & 1) == 0 ? headerLightGreenCellStyle : headerLightOrangeCellStyle,
-                    row, "" + numOfHolidays);
-            colNum = writeNewCell(colNum, (rowNum & 1) == 0 ? headerLightGreenCellStyle : headerLightOrangeCellStyle,
-                    row, "" + (ims1Weekend + ims2Weekend));
-            colNum = writeNewCell(colNum, (rowNum & 1) == 0 ? headerLightGreenCellStyle : headerLightOrangeCellStyle,
-                    row, "" + (ims1Weekday + ims2Weekday));
-            colNum = writeNewCell(colNum, (rowNum & 1) == 0 ? headerLightGreenCellStyle : headerLightOrangeCellStyle,
-                    row, "" + scheduled.size());
-
-            long allAll = keyValueStore.sum(name, year, monthValue, "ALL") + scheduled.size(); //Ebben benne vannak az ünnepek is
-            long frAll = keyValueStore.sum(name, year, monthValue, "FR") + numOfFridays;
-            long suAll = keyValueStore.sum(name, year, monthValue, "SU") + numOfSundays;
-            long weAll = keyValueStore.sum(name, year, monthValue, "WE") + numOfSaturdays + numOfSundays;
-            long nhwdAll = keyValueStore.sum(name, year, monthValue, "NHWD") + numOfWeekdayHolidays;
-            long nhfrAll = keyValueStore.sum(name, year, monthValue, "NHFR") + numOfFridayHolidays;
-            long nhsaAll = keyValueStore.sum(name, year, monthValue, "NHSA") + numOfSaturdayHolidays;
-            long nhsuAll = keyValueStore.sum(name, year, monthValue, "NHSU") + numOfSundayHolidays;
-            long nhAll = nhwdAll + nhfrAll + nhsaAll + nhsuAll;
-            long mon2ThuAll = allAll - (weAll + nhsaAll + nhsuAll) - (frAll + nhfrAll) - nhwdAll;
-            long saAll = weAll - suAll;
-
-
-            /*
-            List<LocalDate> holidaysForYear = HungarianHolidays.getHolidaysForYear(year);
-            List<LocalDate> allHolMonToThu = new ArrayList<>();
-            List<LocalDate> allHolFridays = new ArrayList<>();
-            List<LocalDate> allHolSaturdays = new ArrayList<>();
-            List<LocalDate> allHolSundays = new ArrayList<>();
-
-            //LocalDate date = LocalDate.of(year, 1, 1); // Start from January 1st of the given year
-            LocalDate date = LocalDate.of(year, monthValue, 1);
-            LocalDate endDate = LocalDate.of(year, monthValue, YearMonth.of(year, monthValue).lengthOfMonth()); 
-
-            while (!date.isAfter(endDate)) {
-                if (scheduled.contains(date.getDayOfMonth())) {
-                    if (date.getDayOfWeek() == DayOfWeek.FRIDAY && holidaysForYear.contains(date)) {
-                        allHolFridays.add(date);
-                    } else if (date.getDayOfWeek() == DayOfWeek.SATURDAY && holidaysForYear.contains(date)) {
-                        allHolSaturdays.add(date);
-                    } else if (date.getDayOfWeek() == DayOfWeek.SUNDAY && holidaysForYear.contains(date)) {
-                        allHolSundays.add(date);
-                    } else if (holidaysForYear.contains(date)) {
-                        allHolMonToThu.add(date);
-                    }
+            YearToDate yearToDate = new YearToDate(
+                    previousMonths.getOrDefault(name, Map.of()), statistics.getCategories(name));
+            int ims1Weekend = statistics.get(name, MonthStatistics.Counter.IMS1_WE);
+            int ims1Weekday = statistics.get(name, MonthStatistics.Counter.IMS1_WD);
+            int ims2Weekend = statistics.get(name, MonthStatistics.Counter.IMS2_WE);
+            int ims2Weekday = statistics.get(name, MonthStatistics.Counter.IMS2_WD);
+            double[] values = {
+                    ims1Weekend,
+                    ims1Weekday,
+                    ims2Weekend,
+                    ims2Weekday,
+                    statistics.get(name, MonthStatistics.Counter.NH),
+                    ims1Weekend + ims2Weekend,
+                    ims1Weekday + ims2Weekday,
+                    statistics.get(name, MonthStatistics.Counter.ALL),
+                    yearToDate.getMonToThu(),
+                    yearToDate.getFr(),
+                    yearToDate.getSa(),
+                    yearToDate.getSu(),
+                    yearToDate.getWeekend(),
+                    yearToDate.getNh(),
+                    yearToDate.getAll(),
+                    statistics.get(name, MonthStatistics.Counter.MON_THU),
+                    statistics.get(name, MonthStatistics.Counter.FR),
+                    statistics.get(name, MonthStatistics.Counter.SA),
+                    statistics.get(name, MonthStatistics.Counter.SU),
+                    statistics.get(name, MonthStatistics.Counter.NH),
+                    yearToDate.getWeekendStandby(),
+                    yearToDate.getWeekdayStandby(),
+                    yearToDate.getStandby()
+            };
+            for (int i = 0; i < SUMMARY_COLUMNS; i++) {
+                totals[i] += values[i];
+                if (i < 20) {
+                    colNum = writeNewCell(colNum, rowStyle, row, (long) values[i]);
+                } else {
+                    // standby hours take two merged cells
+                    colNum = writeNewCell(colNum, rowStyle, row, round(values[i]));
+                    row.createCell(colNum++, CellType.NUMERIC);
+                    sheet.addMergedRegion(new CellRangeAddress(rowNum - 1, rowNum - 1, colNum - 2, colNum - 1));
                 }
-                date = date.plusDays(1); // Move to the next day
             }
-            int allHolMonToThuNum = allHolMonToThu.size();
-            int allHolFridaysNum = allHolFridays.size();
-            int allHolSaturdaysNum = allHolSaturdays.size();
-            int allHolSundaysNum = allHolSundays.size();
-            */
-
-            colNum = writeNewCell(colNum, (rowNum & 1) == 0 ? headerLightGreenCellStyle : headerLightOrangeCellStyle,
-                    row, "" + mon2ThuAll);
-            colNum = writeNewCell(colNum, (rowNum & 1) == 0 ? headerLightGreenCellStyle : headerLightOrangeCellStyle,
-                    row, "" + frAll);
-            colNum = writeNewCell(colNum, (rowNum & 1) == 0 ? headerLightGreenCellStyle : headerLightOrangeCellStyle,
-                    row, "" + saAll);
-            colNum = writeNewCell(colNum, (rowNum & 1) == 0 ? headerLightGreenCellStyle : headerLightOrangeCellStyle,
-                    row, "" + suAll);
-
-                    colNum = writeNewCell(colNum, (rowNum & 1) == 0 ? headerLightGreenCellStyle : headerLightOrangeCellStyle,
-                    row, "" + (weAll + nhsaAll + nhsuAll));
-            colNum = writeNewCell(colNum, (rowNum & 1) == 0 ? headerLightGreenCellStyle : headerLightOrangeCellStyle,
-                    row, "" + nhAll);
-            colNum = writeNewCell(colNum, (rowNum & 1) == 0 ? headerLightGreenCellStyle : headerLightOrangeCellStyle,
-                    row, "" + allAll); 
-
-            List<Integer> monToThu = scheduled.stream()
-                    .filter(s1 -> !normalWeekends.contains(s1))
-                    .filter(s2 -> !fridays.contains(s2))
-                    .filter(s3 -> !holidays.contains(s3))
-                    .collect(Collectors.toList());
-            colNum = writeNewCell(colNum, (rowNum & 1) == 0 ? headerLightGreenCellStyle : headerLightOrangeCellStyle,
-                    row, "" + monToThu.size());
-            List<Integer> fridayList = scheduled.stream()
-                    .filter(s1 -> !normalWeekends.contains(s1))
-                    .filter(s2 -> !monToThu.contains(s2))
-                    .filter(s3 -> !holidays.contains(s3))
-                    .collect(Collectors.toList());
-            colNum = writeNewCell(colNum, (rowNum & 1) == 0 ? headerLightGreenCellStyle : headerLightOrangeCellStyle,
-                    row, "" + fridayList.size());
-            colNum = writeNewCell(colNum, (rowNum & 1) == 0 ? headerLightGreenCellStyle : headerLightOrangeCellStyle,
-                    row, "" + numOfSaturdays);
-            colNum = writeNewCell(colNum, (rowNum & 1) == 0 ? headerLightGreenCellStyle : headerLightOrangeCellStyle,
-                    row, "" + numOfSundays);
-            colNum = writeNewCell(colNum, (rowNum & 1) == 0 ? headerLightGreenCellStyle : headerLightOrangeCellStyle,
-                    row, "" + numOfHolidays);
-
-            double weekendSBNum = 3.6 * frAll + 9.6 * saAll + 6 * suAll + 9.6 * (nhfrAll + nhsaAll + nhsuAll  + nhwdAll);
-            double weekdaySBNum = 3.2 * mon2ThuAll  + 1.4 * frAll + 1.8 * suAll;
-
-            /*
-            long frAllNotHol = frAll - allHolFridaysNum;
-            long saAllNotHol = saAll - allHolSaturdaysNum;
-            long suAllNotHol = suAll - allHolSundaysNum;
-            long mon2ThuAllNotHol = mon2ThuAll - allHolMonToThuNum;
-
-            if (allHolFridaysNum + allHolSaturdaysNum + allHolSundaysNum + allHolMonToThuNum != numOfHolidays) {
-                throw new RuntimeException("Holidays are not correct for " + name + " " + (allHolFridaysNum + allHolSaturdaysNum + allHolSundaysNum + allHolMonToThuNum) + " " + numOfHolidays);
-            } else {
-                logger.info("Holidays are correct for " + name + " " + (allHolFridaysNum + allHolSaturdaysNum + allHolSundaysNum + allHolMonToThuNum) + " " + numOfHolidays);
-            }
-
-            double weekendSBNum = 3.6 * frAllNotHol + 9.6 * saAllNotHol + 6 * suAllNotHol + 9.6 * nhAll;
-            double weekdaySBNum = 3.2 * mon2ThuAllNotHol + 1.4 * frAllNotHol + 1.8 * suAllNotHol;
-            */
-
-            colNum = writeNewCell(colNum, (rowNum & 1) == 0 ? headerLightGreenCellStyle : headerLightOrangeCellStyle,
-                    row, df.format(weekendSBNum));
-            row.createCell(colNum++, CellType.NUMERIC);
-            sheet.addMergedRegion(new CellRangeAddress(rowNum - 1, rowNum - 1, colNum - 2, colNum - 1));
-            colNum = writeNewCell(colNum, (rowNum & 1) == 0 ? headerLightGreenCellStyle : headerLightOrangeCellStyle,
-                    row, df.format(weekdaySBNum));
-            row.createCell(colNum++, CellType.NUMERIC);
-            sheet.addMergedRegion(new CellRangeAddress(rowNum - 1, rowNum - 1, colNum - 2, colNum - 1));
-            double allSBNum = weekendSBNum + weekdaySBNum;
-            colNum = writeNewCell(colNum, (rowNum & 1) == 0 ? headerLightGreenCellStyle : headerLightOrangeCellStyle,
-                    row, df.format(allSBNum));
-            row.createCell(colNum++, CellType.NUMERIC);
-            sheet.addMergedRegion(new CellRangeAddress(rowNum - 1, rowNum - 1, colNum - 2, colNum - 1));
-
-            keyValueStore.writeData(name, year, monthValue, "ALL", scheduled.size());
-            keyValueStore.writeData(name, year, monthValue, "FR", (int) numOfFridays);
-            keyValueStore.writeData(name, year, monthValue, "SU", (int) numOfSundays);
-            keyValueStore.writeData(name, year, monthValue, "WE", (int) (numOfSaturdays + numOfSundays));
-            keyValueStore.writeData(name, year, monthValue, "NHWD", (int) numOfWeekdayHolidays);
-            keyValueStore.writeData(name, year, monthValue, "NHFR", (int) numOfFridayHolidays);
-            keyValueStore.writeData(name, year, monthValue, "NHSA", (int) numOfSaturdayHolidays);
-            keyValueStore.writeData(name, year, monthValue, "NHSU", (int) numOfSundayHolidays);
-
         }
 
         row = sheet.createRow(rowNum++);
         colNum = 0;
         cell = row.createCell(colNum++);
-        for (int i = 0; i < 23; i++) {
-            Cell summaryCell = row.createCell(colNum++, CellType.FORMULA);
+        int endNum = rowNum - 1;
+        int startNum = endNum - names.size() + 1;
+        for (int i = 0; i < SUMMARY_COLUMNS; i++) {
+            Cell summaryCell = row.createCell(colNum++, CellType.NUMERIC);
             summaryCell.setCellStyle(sumCellStyle);
-            char colName = (char) (64 + colNum);
-            int endNum = rowNum - 1;
-            int startNum = endNum - names.size() + 1;
+            if (liveFormulas) {
+                String colName = CellReference.convertNumToColString(colNum - 1);
+                summaryCell.setCellFormula("SUM(" + colName + startNum + ":" + colName + endNum + ")");
+            }
+            // the cached value of the formula too, so nothing has to be evaluated
+            summaryCell.setCellValue(round(totals[i]));
             if (i > 19) {
-                row.createCell(colNum++, CellType.FORMULA);
+                row.createCell(colNum++, CellType.NUMERIC);
                 sheet.addMergedRegion(new CellRangeAddress(rowNum - 1, rowNum - 1, colNum - 2, colNum - 1));
             }
-            summaryCell.setCellFormula("SUM(" + colName + startNum + ":" + colName + endNum + ")");
-            FormulaEvaluator formulaEvaluator = workbook.getCreationHelper().createFormulaEvaluator();
-            formulaEvaluator.evaluate(summaryCell);
         }
 
-        keyValueStore.printAll(year);
-        try {
-            keyValueStore.close();
-        } catch (SQLException e) {
-            logger.error(e);
+    }
+
+    /**
+     * Writes the month grid of the new version with the changed cells highlighted: added assignments are green,
+     * removed ones red, role changes yellow, unchanged assignments are plain.
+     */
+    public static void writeChanges(ScheduleDiff diff, Path path) throws IOException {
+        ScheduleSnapshot snapshot = diff.getCurrent();
+        Map<String, Map<Integer, ScheduleDiff.Change>> changes = new TreeMap<>();
+        for (ScheduleDiff.Change change : diff.getChanges()) {
+            changes.computeIfAbsent(change.getName(), k -> new HashMap<>()).put(change.getDate().getDayOfMonth(), change);
         }
+        Set<String> names = new TreeSet<>(snapshot.getNames());
+        names.addAll(changes.keySet());
+
+        Workbook workbook = new SXSSFWorkbook(ROW_WINDOW);
+        CellStylePalette palette = new CellStylePalette(workbook);
+        CellStyle headerCellStyle = palette.get(IndexedColors.BLACK, IndexedColors.WHITE);
+        CellStyle addedStyle = palette.get(IndexedColors.LIGHT_GREEN);
+        CellStyle removedStyle = palette.get(IndexedColors.ROSE);
+        CellStyle roleChangedStyle = palette.get(IndexedColors.LIGHT_YELLOW);
+        Sheet sheet = workbook.createSheet("Changes");
+        sheet.setColumnWidth(0, 18 * 256);
 
-        // ************************************************************************
+        Row row = sheet.createRow(0);
+        Cell cell = row.createCell(0);
+        LocalDate ld = snapshot.getDate();
+        cell.setCellValue(ld.getYear() + " " + ld.getMonth().name().substring(0, 3));
+        cell.setCellStyle(headerCellStyle);
+        for (int day = 1; day <= snapshot.getNumOfDays(); day++) {
+            cell = row.createCell(day);
+            cell.setCellValue(day);
+            cell.setCellStyle(headerCellStyle);
+            sheet.setColumnWidth(day, 10 * 256);
+        }
+        int rowNum = 1;
+        for (String name : names) {
+            Map<Integer, ScheduleDiff.Change> personChanges = changes.getOrDefault(name, Map.of());
+            row = sheet.createRow(rowNum++);
+            row.createCell(0).setCellValue(name);
+            for (int day = 1; day <= snapshot.getNumOfDays(); day++) {
+                ScheduleDiff.Change change = personChanges.get(day);
+                if (change != null) {
+                    cell = row.createCell(day);
+                    switch (change.getKind()) {
+                        case ADDED:
+                            cell.setCellValue("+" + change.getRole());
+                            cell.setCellStyle(addedStyle);
+                            break;
+                        case REMOVED:
+                            cell.setCellValue("-" + change.getPreviousRole());
+                            cell.setCellStyle(removedStyle);
+                            break;
+                        default:
+                            cell.setCellValue(change.getPreviousRole() + ">" + change.getRole());
+                            cell.setCellStyle(roleChangedStyle);
+                    }
+                } else if (snapshot.getScheduled(day).contains(name)) {
+                    row.createCell(day).setCellValue(ScheduleDiff.role(snapshot, day, name));
+                }
+            }
+        }
+        write(workbook, path);
+    }
 
-        String fileNameExcel = "schedule-" + localDate.getYear() + "-" + localDate.getMonthValue() + ".xlsx";
-        try (FileOutputStream outputStream = new FileOutputStream(fileNameExcel)) {
+    /**
+     * Writes the workbook in one go and releases it, including the temporary files of a streaming workbook.
+     */
+    static void write(Workbook workbook, Path path) throws IOException {
+        try (OutputStream outputStream = Files.newOutputStream(path)) {
             workbook.write(outputStream);
+        } finally {
+            if (workbook instanceof SXSSFWorkbook) {
+                ((SXSSFWorkbook) workbook).dispose();
+            }
+            workbook.close();
         }
-        workbook.close();
     }
 
 
+    private static double round(double value) {
+        return Math.round(value * 100) / 100.0;
+    }
+
+    private static int writeNewCell(int colNum, CellStyle cellStyle, Row row, double value) {
+        Cell cell = row.createCell(colNum++, CellType.NUMERIC);
+        cell.setCellValue(value);
+        cell.setCellStyle(cellStyle);
+        return colNum;
+    }
+
+    private static int writeNewCell(int colNum, CellStyle cellStyle, Row row, long value) {
+        Cell cell = row.createCell(colNum++, CellType.NUMERIC);
+        cell.setCellValue(value);
+        cell.setCellStyle(cellStyle);
+        return colNum;
+    }
+
     private static int writeNewCell(int colNum, CellStyle cellStyle, Row row, String str) {
         Cell cell;
         if (isNumeric(str)) {
@@ -477,18 +421,4 @@ public class ExcelExporter {
         }
     }
 
-    private CellStyle getCellStyle(Workbook workbook, IndexedColors indexedColors) {
-        return getCellStyle(workbook, indexedColors.getIndex(), FillPatternType.SOLID_FOREGROUND);
-    }
-
-    private CellStyle getCellStyle(Workbook workbook, short indexedColor, FillPatternType fillPatternType) {
-        CellStyle style = workbook.createCellStyle();
-        style.setFillForegroundColor(indexedColor);
-        style.setFillPattern(fillPatternType);
-        style.setAlignment(HorizontalAlignment.CENTER);
-        style.setVerticalAlignment(VerticalAlignment.CENTER);
-        style.setWrapText(true);
-        return style;
-    }
-
 }
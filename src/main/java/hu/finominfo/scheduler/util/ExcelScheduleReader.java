@@ -0,0 +1,168 @@
+package hu.finominfo.scheduler.util;
+
+import hu.finominfo.scheduler.people.Person;
+import hu.finominfo.scheduler.scheduler.ScheduleSnapshot;
+import org.apache.poi.openxml4j.opc.OPCPackage;
+import org.apache.poi.openxml4j.opc.PackageAccess;
+import org.apache.poi.ss.usermodel.DataFormatter;
+import org.apache.poi.ss.util.CellReference;
+import org.apache.poi.util.XMLHelper;
+import org.apache.poi.xssf.eventusermodel.ReadOnlySharedStringsTable;
+import org.apache.poi.xssf.eventusermodel.XSSFReader;
+import org.apache.poi.xssf.eventusermodel.XSSFSheetXMLHandler;
+import org.apache.poi.xssf.usermodel.XSSFComment;
+import org.xml.sax.InputSource;
+import org.xml.sax.XMLReader;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.time.Month;
+import java.util.*;
+
+/**
+ * Reads the monthly grid written by ExcelExporter with the streaming (SAX) event API of POI, so the workbook is
+ * never loaded into memory as a whole.
+ */
+public class ExcelScheduleReader implements XSSFSheetXMLHandler.SheetContentsHandler {
+
+    private LocalDate date;
+    private boolean gridFinished = false;
+    private String rowName;
+    private final Map<Integer, String> rowCells = new HashMap<>();
+    private final Map<Integer, Set<String>> scheduled = new HashMap<>();
+    private final Map<Integer, Set<String>> ims1Names = new HashMap<>();
+    private final Map<String, Person> persons = new LinkedHashMap<>();
+
+    private ExcelScheduleReader() {
+    }
+
+    public static ScheduleSnapshot read(Path path) throws IOException {
+        return parse(path).toSnapshot();
+    }
+
+    /**
+     * Reads the grid as it is, including the cells a snapshot can not hold (e.g. a third person on a day), so
+     * it can be validated before it is turned into a snapshot.
+     */
+    public static ExcelScheduleReader parse(Path path) throws IOException {
+        ExcelScheduleReader reader = new ExcelScheduleReader();
+        try (OPCPackage opcPackage = OPCPackage.open(path.toFile(), PackageAccess.READ)) {
+            XSSFReader xssfReader = new XSSFReader(opcPackage);
+            ReadOnlySharedStringsTable strings = new ReadOnlySharedStringsTable(opcPackage);
+            Iterator<InputStream> sheets = xssfReader.getSheetsData();
+            if (!sheets.hasNext()) {
+                throw new IOException("No sheet in " + path);
+            }
+            try (InputStream sheet = sheets.next()) {
+                XMLReader xmlReader = XMLHelper.newXMLReader();
+                xmlReader.setContentHandler(new XSSFSheetXMLHandler(
+                        xssfReader.getStylesTable(), strings, reader, new DataFormatter(), false));
+                xmlReader.parse(new InputSource(sheet));
+            }
+        } catch (IOException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new IOException("Cannot read " + path + ": " + e.getMessage(), e);
+        }
+        if (reader.date == null) {
+            throw new IOException("No schedule header in " + path);
+        }
+        return reader;
+    }
+
+    public ScheduleSnapshot toSnapshot() {
+        return ScheduleSnapshot.create(date, scheduled, getFoNames(), persons.values());
+    }
+
+    public LocalDate getDate() {
+        return date;
+    }
+
+    /**
+     * @return the names of the rows in sheet order
+     */
+    public List<String> getNames() {
+        return new ArrayList<>(persons.keySet());
+    }
+
+    public Map<Integer, Set<String>> getScheduled() {
+        return scheduled;
+    }
+
+    /**
+     * @return the people marked IMS1 per day, normally one
+     */
+    public Map<Integer, Set<String>> getIms1Names() {
+        return ims1Names;
+    }
+
+    public Map<Integer, String> getFoNames() {
+        Map<Integer, String> foNames = new HashMap<>();
+        ims1Names.forEach((day, names) -> foNames.put(day, names.iterator().next()));
+        return foNames;
+    }
+
+    @Override
+    public void startRow(int rowNum) {
+        rowName = null;
+        rowCells.clear();
+    }
+
+    @Override
+    public void endRow(int rowNum) {
+        if (gridFinished || rowNum < 2) {
+            return;
+        }
+        if (rowName == null || rowName.isEmpty()) {
+            gridFinished = true;
+            return;
+        }
+        Person person = persons.computeIfAbsent(rowName, Person::new);
+        rowCells.forEach((day, value) -> {
+            switch (value.trim().toUpperCase()) {
+                case "IMS1":
+                    scheduled.computeIfAbsent(day, d -> new LinkedHashSet<>()).add(rowName);
+                    ims1Names.computeIfAbsent(day, d -> new LinkedHashSet<>()).add(rowName);
+                    break;
+                case "IMS2":
+                    scheduled.computeIfAbsent(day, d -> new LinkedHashSet<>()).add(rowName);
+                    break;
+                case "X":
+                    person.getHatedDays().add(day);
+                    break;
+            }
+        });
+    }
+
+    @Override
+    public void cell(String cellReference, String formattedValue, XSSFComment comment) {
+        if (gridFinished || cellReference == null || formattedValue == null) {
+            return;
+        }
+        CellReference reference = new CellReference(cellReference);
+        int column = reference.getCol();
+        if (reference.getRow() == 0 && column == 0) {
+            date = parseHeader(formattedValue);
+        } else if (column == 0) {
+            rowName = formattedValue.trim();
+        } else {
+            rowCells.put(column, formattedValue);
+        }
+    }
+
+    // "2024 AUG" as written into the top left cell by ExcelExporter
+    private static LocalDate parseHeader(String header) {
+        String[] split = header.trim().split(" +");
+        if (split.length != 2) {
+            return null;
+        }
+        for (Month month : Month.values()) {
+            if (month.name().substring(0, 3).equalsIgnoreCase(split[1])) {
+                return LocalDate.of(Integer.parseInt(split[0]), month, 1);
+            }
+        }
+        return null;
+    }
+}
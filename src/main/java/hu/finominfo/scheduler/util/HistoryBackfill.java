@@ -0,0 +1,132 @@
+package hu.finominfo.scheduler.util;
+
+import hu.finominfo.scheduler.people.Person;
+import hu.finominfo.scheduler.scheduler.ScheduleSnapshot;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.SQLException;
+import java.time.LocalDate;
+import java.util.*;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+/**
+ * Regenerates the monthly statistics of the KeyValueStore of a directory from the archived schedule files in it.
+ * Every month is read from its most recently modified schedule-YYYY-M.bin, .csv or .xlsx file; the files are
+ * parsed in parallel and the result is loaded in one transaction.
+ */
+public class HistoryBackfill {
+
+    private static final Logger LOGGER = LogManager.getLogger(HistoryBackfill.class);
+
+    private static final Pattern FILE_NAME = Pattern.compile("schedule-(\\d{4})-(\\d{1,2})\\.(bin|csv|xlsx)");
+
+    private final Path directory;
+
+    public HistoryBackfill(Path directory) {
+        this.directory = directory;
+    }
+
+    public int run() throws IOException, SQLException {
+        Map<LocalDate, Path> sources = findSources(directory);
+        List<MonthStatistics> months;
+        try {
+            months = sources
+                    .entrySet()
+                    .parallelStream()
+                    .map(entry -> new MonthStatistics(load(entry.getKey(), entry.getValue())))
+                    .collect(Collectors.toList());
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+        // the database of the scanned directory, e.g. of a team
+        KeyValueStore keyValueStore = new KeyValueStore(directory);
+        try {
+            keyValueStore.createDatabase();
+            keyValueStore.writeAll(months);
+        } finally {
+            keyValueStore.close();
+        }
+        LOGGER.info(months.size() + " months were loaded into the KeyValueStore.");
+        return months.size();
+    }
+
+    /**
+     * The most recently modified schedule file of every month found in the directory.
+     */
+    static Map<LocalDate, Path> findSources(Path directory) throws IOException {
+        Map<LocalDate, Path> sources = new TreeMap<>();
+        try (Stream<Path> files = Files.list(directory)) {
+            for (Path path : (Iterable<Path>) files::iterator) {
+                Matcher matcher = FILE_NAME.matcher(path.getFileName().toString());
+                int month = matcher.matches() ? Integer.parseInt(matcher.group(2)) : 0;
+                if (month >= 1 && month <= 12) {
+                    LocalDate date = LocalDate.of(Integer.parseInt(matcher.group(1)), month, 1);
+                    Path other = sources.get(date);
+                    if (other == null || Files.getLastModifiedTime(path).compareTo(Files.getLastModifiedTime(other)) > 0) {
+                        sources.put(date, path);
+                    }
+                }
+            }
+        }
+        return sources;
+    }
+
+    static ScheduleSnapshot load(LocalDate date, Path path) {
+        return load(date, path, true);
+    }
+
+    /**
+     * @param mapped whether a bin file is memory-mapped or read into the heap; the snapshots which are kept
+     *               must not hold the mapping of the file
+     */
+    static ScheduleSnapshot load(LocalDate date, Path path, boolean mapped) {
+        try {
+            String fileName = path.getFileName().toString();
+            if (fileName.endsWith(".bin")) {
+                return mapped ? ScheduleSnapshot.map(path) : ScheduleSnapshot.read(path);
+            }
+            if (fileName.endsWith(".xlsx")) {
+                return ExcelScheduleReader.read(path);
+            }
+            return readCsv(date, Files.readAllLines(path, UTF_8));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    // Name_Of_Person w1 w5 f1 b5
+    static ScheduleSnapshot readCsv(LocalDate date, List<String> lines) {
+        Map<Integer, Set<String>> scheduled = new HashMap<>();
+        Map<Integer, String> foNames = new HashMap<>();
+        List<Person> persons = new ArrayList<>();
+        for (String line : lines) {
+            String[] split = line.trim().split(" +");
+            if (split[0].isEmpty()) {
+                continue;
+            }
+            String name = split[0].replaceAll("_", " ");
+            persons.add(new Person(name));
+            for (int i = 1; i < split.length; i++) {
+                char sign = split[i].charAt(0);
+                int day = Integer.parseInt(split[i].substring(1));
+                if (sign == 'w' || sign == 'f' || sign == 'b') {
+                    scheduled.computeIfAbsent(day, d -> new LinkedHashSet<>()).add(name);
+                }
+                if (sign == 'f') {
+                    foNames.put(day, name);
+                }
+            }
+        }
+        return ScheduleSnapshot.create(date, scheduled, foNames, persons);
+    }
+}
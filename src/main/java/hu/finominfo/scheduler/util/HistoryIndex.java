@@ -0,0 +1,176 @@
+package hu.finominfo.scheduler.util;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDate;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+/**
+ * Append-only binary index of the number of scheduled days per person and month.
+ * <p>
+ * Layout: a header (magic, version) followed by one block per written month: the length of the rest of the
+ * block (int), year (short), month (byte), number of entries (short), then for every entry the
+ * UTF-8 name (short length + bytes) and the number of scheduled days (int).
+ * A month that is written again simply gets a new block, the last one wins.
+ * <p>
+ * The index is read through a read-only mapped buffer, the blocks of the other years are skipped by their length,
+ * so a sum decodes the entries of the blocks of its year only.
+ */
+public class HistoryIndex {
+
+    private static final Logger LOGGER = LogManager.getLogger(HistoryIndex.class);
+
+    private static final int MAGIC = 0x53484958; // "SHIX"
+    private static final int VERSION = 2;
+    private static final int HEADER_SIZE = 8;
+    private static final int BLOCK_HEADER_SIZE = 4 + 2 + 1 + 2;
+    private static final Pattern CSV_NAME = Pattern.compile("schedule-(\\d+)-(\\d+)\\.csv");
+
+    private final Path path;
+
+    public HistoryIndex() {
+        this(Paths.get("schedule-history.idx"));
+    }
+
+    public HistoryIndex(Path path) {
+        this.path = path;
+    }
+
+    public boolean exists() {
+        return Files.isRegularFile(path);
+    }
+
+    public void appendMonth(int year, int month, Map<String, Integer> counts) throws IOException {
+        List<Map.Entry<String, Integer>> entries = List.copyOf(new TreeMap<>(counts).entrySet());
+        int size = BLOCK_HEADER_SIZE;
+        byte[][] names = new byte[entries.size()][];
+        for (int i = 0; i < entries.size(); i++) {
+            names[i] = entries.get(i).getKey().getBytes(UTF_8);
+            size += 2 + names[i].length + 4;
+        }
+        ByteBuffer block = ByteBuffer.allocate(size);
+        block.putInt(size - 4);
+        block.putShort((short) year);
+        block.put((byte) month);
+        block.putShort((short) entries.size());
+        for (int i = 0; i < entries.size(); i++) {
+            block.putShort((short) names[i].length);
+            block.put(names[i]);
+            block.putInt(entries.get(i).getValue());
+        }
+        block.flip();
+        try (FileChannel channel = FileChannel.open(path,
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND)) {
+            if (channel.size() == 0) {
+                ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+                header.putInt(MAGIC);
+                header.putInt(VERSION);
+                header.flip();
+                while (header.hasRemaining()) {
+                    channel.write(header);
+                }
+            }
+            while (block.hasRemaining()) {
+                channel.write(block);
+            }
+        }
+    }
+
+    /**
+     * Sums the scheduled days per person from January up to and including the given month.
+     */
+    public Map<String, Integer> sumForYear(int year, int upToMonth) throws IOException {
+        Map<Integer, Map<String, Integer>> months = new HashMap<>();
+        if (!exists()) {
+            return new HashMap<>();
+        }
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            if (channel.size() < HEADER_SIZE) {
+                return new HashMap<>();
+            }
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            if (buffer.getInt(0) != MAGIC || buffer.getInt(4) != VERSION) {
+                throw new IOException("Unknown history index format: " + path);
+            }
+            int offset = HEADER_SIZE;
+            while (offset + BLOCK_HEADER_SIZE <= buffer.limit()) {
+                int end = offset + 4 + buffer.getInt(offset);
+                if (end > buffer.limit()) {
+                    break;
+                }
+                // the blocks of the other years are skipped by their length
+                int blockMonth = buffer.get(offset + 6);
+                if (buffer.getShort(offset + 4) == year && blockMonth <= upToMonth) {
+                    buffer.position(offset + 7);
+                    months.put(blockMonth, readEntries(buffer));
+                }
+                offset = end;
+            }
+        }
+        Map<String, Integer> result = new HashMap<>();
+        months.values().forEach(counts -> counts.forEach((name, value) -> result.merge(name, value, Integer::sum)));
+        return result;
+    }
+
+    /**
+     * Reads the number of entries and the entries of a block.
+     */
+    private static Map<String, Integer> readEntries(ByteBuffer buffer) {
+        int numOfEntries = buffer.getShort();
+        Map<String, Integer> counts = new HashMap<>();
+        for (int i = 0; i < numOfEntries; i++) {
+            byte[] name = new byte[buffer.getShort()];
+            buffer.get(name);
+            counts.put(new String(name, UTF_8), buffer.getInt());
+        }
+        return counts;
+    }
+
+    /**
+     * One-time import of every already existing schedule-YYYY-M.csv file next to the index, in the order of
+     * the months, used when the index does not exist yet.
+     */
+    public void importCsv() throws IOException {
+        Path directory = path.toAbsolutePath().getParent();
+        Map<LocalDate, Path> files = new TreeMap<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory, "schedule-*.csv")) {
+            for (Path csv : stream) {
+                Matcher matcher = CSV_NAME.matcher(csv.getFileName().toString());
+                if (matcher.matches() && Files.isRegularFile(csv)) {
+                    int month = Integer.parseInt(matcher.group(2));
+                    if (month >= 1 && month <= 12) {
+                        files.put(LocalDate.of(Integer.parseInt(matcher.group(1)), month, 1), csv);
+                    }
+                }
+            }
+        }
+        for (Map.Entry<LocalDate, Path> file : files.entrySet()) {
+            Map<String, Integer> counts = new HashMap<>();
+            for (String line : Files.readAllLines(file.getValue(), UTF_8)) {
+                String[] split = line.trim().split(" +");
+                if (!split[0].isEmpty()) {
+                    counts.merge(split[0].replaceAll("_", " "), (split.length - 1) / 2, Integer::sum);
+                }
+            }
+            appendMonth(file.getKey().getYear(), file.getKey().getMonthValue(), counts);
+            LOGGER.info(file.getValue() + " was imported into the history index.");
+        }
+    }
+}
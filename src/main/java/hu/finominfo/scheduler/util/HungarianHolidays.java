@@ -50,11 +50,11 @@ public class HungarianHolidays {
         return holidays;
     }
 
-    // Define a method to get Hungarian holidays for a specific month
+    // Define a method to get Hungarian holidays for a specific month, with the days of the calendar file
     public static List<LocalDate> getHolidaysForMonth(int year, Month month) {
-        // Filter the holidays for the given month
-        return getHolidaysForYear(year).stream()
-                .filter(date -> date.getMonth() == month)
+        // Read from the cached table of the year
+        return WorkCalendar.of(year).getHolidays(month).stream()
+                .map(day -> LocalDate.of(year, month, day))
                 .collect(Collectors.toList());
     }
 
@@ -0,0 +1,69 @@
+package hu.finominfo.scheduler.util;
+
+import hu.finominfo.scheduler.scheduler.ScheduleSnapshot;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+/**
+ * Writes an iCalendar feed per person, schedule-YYYY-M-Name_Of_Person.ics, with an all day event for every
+ * IMS1 and IMS2 day. The UID of an event depends only on the day and the person, so a re-exported month
+ * updates the events already imported into a calendar.
+ */
+public class IcsScheduleExporter implements ScheduleExporter {
+
+    private static final DateTimeFormatter STAMP = DateTimeFormatter.ofPattern("yyyyMMdd'T'HHmmss'Z'");
+
+    @Override
+    public void export(ScheduleSnapshot snapshot, Path directory) throws IOException {
+        String stamp = ZonedDateTime.now(ZoneOffset.UTC).format(STAMP);
+        for (String name : snapshot.getNames()) {
+            String fileName = name.replaceAll("[^\\p{L}\\p{N}.-]+", "_");
+            Path path = directory.resolve("schedule-" + snapshot.getYear() + "-" + snapshot.getMonthValue() + "-" + fileName + ".ics");
+            try (Writer writer = Files.newBufferedWriter(path, UTF_8)) {
+                line(writer, "BEGIN:VCALENDAR");
+                line(writer, "VERSION:2.0");
+                line(writer, "PRODID:-//finominfo//scheduler//EN");
+                line(writer, "CALSCALE:GREGORIAN");
+                for (int day = 1; day <= snapshot.getNumOfDays(); day++) {
+                    boolean ims1 = name.equals(snapshot.getFoName(day));
+                    if (ims1 || name.equals(snapshot.getBoName(day))) {
+                        writeEvent(writer, snapshot.getDate().withDayOfMonth(day), name, fileName, ims1 ? "IMS1" : "IMS2", stamp);
+                    }
+                }
+                line(writer, "END:VCALENDAR");
+            }
+        }
+    }
+
+    private static void writeEvent(Writer writer, LocalDate date, String name, String fileName, String role, String stamp)
+            throws IOException {
+        String day = date.format(DateTimeFormatter.BASIC_ISO_DATE);
+        line(writer, "BEGIN:VEVENT");
+        line(writer, "UID:" + day + "-" + fileName + "@scheduler.finominfo.hu");
+        line(writer, "DTSTAMP:" + stamp);
+        line(writer, "DTSTART;VALUE=DATE:" + day);
+        line(writer, "DTEND;VALUE=DATE:" + date.plusDays(1).format(DateTimeFormatter.BASIC_ISO_DATE));
+        line(writer, "SUMMARY:" + role + " " + escape(name));
+        line(writer, "TRANSP:TRANSPARENT");
+        line(writer, "END:VEVENT");
+    }
+
+    private static String escape(String str) {
+        return str.replace("\\", "\\\\").replace(";", "\\;").replace(",", "\\,");
+    }
+
+    // RFC 5545 wants CRLF line endings
+    private static void line(Writer writer, String str) throws IOException {
+        writer.write(str);
+        writer.write("\r\n");
+    }
+}
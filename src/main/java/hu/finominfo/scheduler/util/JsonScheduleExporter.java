@@ -0,0 +1,89 @@
+package hu.finominfo.scheduler.util;
+
+import hu.finominfo.scheduler.scheduler.ScheduleSnapshot;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+/**
+ * Writes schedule-YYYY-M.json: the IMS1 and IMS2 of every day with the kind of the day, then the days of every
+ * person. The document is streamed into the file without building it in memory.
+ */
+public class JsonScheduleExporter implements ScheduleExporter {
+
+    @Override
+    public void export(ScheduleSnapshot snapshot, Path directory) throws IOException {
+        Path path = directory.resolve(ScheduleSnapshot.fileName(snapshot.getDate(), "json"));
+        try (Writer writer = Files.newBufferedWriter(path, UTF_8)) {
+            writer.write("{\"year\":");
+            writer.write(Integer.toString(snapshot.getYear()));
+            writer.write(",\"month\":");
+            writer.write(Integer.toString(snapshot.getMonthValue()));
+            writer.write(",\"days\":[");
+            for (int day = 1; day <= snapshot.getNumOfDays(); day++) {
+                int flags = snapshot.getDayFlags(day);
+                writer.write(day == 1 ? "\n{\"date\":\"" : ",\n{\"date\":\"");
+                writer.write(snapshot.getDate().withDayOfMonth(day).toString());
+                writer.write("\",\"holiday\":");
+                writer.write(Boolean.toString((flags & ScheduleSnapshot.DAY_HOLIDAY) != 0));
+                writer.write(",\"weekend\":");
+                writer.write(Boolean.toString((flags & (ScheduleSnapshot.DAY_SATURDAY | ScheduleSnapshot.DAY_SUNDAY)) != 0));
+                writer.write(",\"ims1\":");
+                writeString(writer, snapshot.getFoName(day));
+                writer.write(",\"ims2\":");
+                writeString(writer, snapshot.getBoName(day));
+                writer.write('}');
+            }
+            writer.write("],\"people\":[");
+            boolean first = true;
+            for (String name : snapshot.getNames()) {
+                writer.write(first ? "\n{\"name\":" : ",\n{\"name\":");
+                first = false;
+                writeString(writer, name);
+                writer.write(",\"ims1\":[");
+                writeDays(writer, snapshot, name, true);
+                writer.write("],\"ims2\":[");
+                writeDays(writer, snapshot, name, false);
+                writer.write("]}");
+            }
+            writer.write("]}\n");
+        }
+    }
+
+    private static void writeDays(Writer writer, ScheduleSnapshot snapshot, String name, boolean ims1) throws IOException {
+        boolean first = true;
+        for (int day = 1; day <= snapshot.getNumOfDays(); day++) {
+            if (name.equals(ims1 ? snapshot.getFoName(day) : snapshot.getBoName(day))) {
+                if (!first) {
+                    writer.write(',');
+                }
+                first = false;
+                writer.write(Integer.toString(day));
+            }
+        }
+    }
+
+    private static void writeString(Writer writer, String str) throws IOException {
+        if (str == null) {
+            writer.write("null");
+            return;
+        }
+        writer.write('"');
+        for (int i = 0; i < str.length(); i++) {
+            char c = str.charAt(i);
+            if (c == '"' || c == '\\') {
+                writer.write('\\');
+                writer.write(c);
+            } else if (c < 0x20) {
+                writer.write(String.format("\\u%04x", (int) c));
+            } else {
+                writer.write(c);
+            }
+        }
+        writer.write('"');
+    }
+}
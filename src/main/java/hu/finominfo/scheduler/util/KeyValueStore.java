@@ -3,14 +3,17 @@ package hu.finominfo.scheduler.util;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 
+import java.io.BufferedWriter;
 import java.io.IOException;
-import java.nio.charset.StandardCharsets;
-import java.nio.file.Files;
-import java.nio.file.OpenOption;
+import java.io.Writer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
 import java.sql.*;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -23,10 +26,23 @@ public class KeyValueStore {
     private static final String DB_PASSWORD = "";
 
     private Connection connection;
+    private final Path directory;
 
     public KeyValueStore() {
+        this(DB_URL, Paths.get(""));
+    }
+
+    /**
+     * The database and allData.txt of a team, in its directory.
+     */
+    public KeyValueStore(Path directory) {
+        this("jdbc:h2:" + directory.toAbsolutePath().resolve("keyvaluestore"), directory);
+    }
+
+    private KeyValueStore(String url, Path directory) {
+        this.directory = directory;
         try {
-            connection = DriverManager.getConnection(DB_URL, DB_USER, DB_PASSWORD);
+            connection = DriverManager.getConnection(url, DB_USER, DB_PASSWORD);
         } catch (SQLException e) {
             e.printStackTrace();
         }
@@ -64,6 +80,36 @@ public class KeyValueStore {
         }
     }
 
+    /**
+     * Writes the statistics of all the given months in one transaction.
+     */
+    public void writeAll(Collection<MonthStatistics> months) throws SQLException {
+        boolean autoCommit = connection.getAutoCommit();
+        connection.setAutoCommit(false);
+        try (PreparedStatement preparedStatement = connection.prepareStatement(
+                "MERGE INTO KeyValueStore (name, year, month, type, value) VALUES (?, ?, ?, ?, ?)")) {
+            for (MonthStatistics month : months) {
+                for (String name : month.getNames()) {
+                    for (Map.Entry<String, Integer> entry : month.getCategories(name).entrySet()) {
+                        preparedStatement.setString(1, name);
+                        preparedStatement.setInt(2, month.getYear());
+                        preparedStatement.setInt(3, month.getMonth());
+                        preparedStatement.setString(4, entry.getKey());
+                        preparedStatement.setInt(5, entry.getValue());
+                        preparedStatement.addBatch();
+                    }
+                }
+            }
+            preparedStatement.executeBatch();
+            connection.commit();
+        } catch (SQLException e) {
+            connection.rollback();
+            throw e;
+        } finally {
+            connection.setAutoCommit(autoCommit);
+        }
+    }
+
     public Map<String, Integer> readData(String name, int year, int month, String type) {
         Map<String, Integer> data = new HashMap<>();
         try {
@@ -107,6 +153,27 @@ public class KeyValueStore {
         return sum;
     }
 
+    /**
+     * The sums of every person and type of the months of the year before the given month, in one query.
+     */
+    public Map<String, Map<String, Integer>> sums(int year, int month) {
+        Map<String, Map<String, Integer>> sums = new HashMap<>();
+        try (PreparedStatement preparedStatement = connection.prepareStatement(
+                "SELECT name, type, SUM(value) FROM KeyValueStore WHERE year = ? AND month < ? GROUP BY name, type")) {
+            preparedStatement.setInt(1, year);
+            preparedStatement.setInt(2, month);
+            try (ResultSet resultSet = preparedStatement.executeQuery()) {
+                while (resultSet.next()) {
+                    sums.computeIfAbsent(resultSet.getString(1), name -> new HashMap<>())
+                            .put(resultSet.getString(2), resultSet.getInt(3));
+                }
+            }
+        } catch (SQLException e) {
+            e.printStackTrace();
+        }
+        return sums;
+    }
+
     public List<String> getNames() {
         List<String> names = new ArrayList<>();
         try {
@@ -130,31 +197,98 @@ public class KeyValueStore {
     }
 
 
-    public void printAll(int year){
-        try {
-            PreparedStatement preparedStatement = connection.prepareStatement(
-                    "SELECT * from KeyValueStore where year = " + year);
-            ResultSet resultSet = preparedStatement.executeQuery();
-            StringBuilder sb = new StringBuilder();
-            while (resultSet.next()) {
-                sb.append(resultSet.getString(1));
-                sb.append(" ");
-                sb.append(resultSet.getInt(2));
-                sb.append(" ");
-                sb.append(resultSet.getInt(3));
-                sb.append(" ");
-                sb.append(resultSet.getString(4));
-                sb.append(" ");
-                sb.append(resultSet.getInt(5));
-                sb.append(System.lineSeparator());
+    public void printAll(int year) throws SQLException, IOException {
+        dump(directory.resolve("allData.txt"), DumpFormat.TEXT, year, year, null);
+    }
+
+    /**
+     * Streams the rows of the given year range (and person, if not null) into the file through a cursor,
+     * so the memory use does not depend on the size of the history.
+     */
+    public void dump(Path path, DumpFormat format, int fromYear, int toYear, String name)
+            throws SQLException, IOException {
+        String sql = "SELECT name, year, month, type, value FROM KeyValueStore WHERE year BETWEEN ? AND ?"
+                + (name == null ? "" : " AND name = ?")
+                + " ORDER BY year, month, name, type";
+        try (PreparedStatement preparedStatement = connection.prepareStatement(sql);
+             FileChannel channel = FileChannel.open(path,
+                     StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+             Writer writer = new BufferedWriter(Channels.newWriter(channel, UTF_8.newEncoder(), -1), 1 << 16)) {
+            preparedStatement.setInt(1, fromYear);
+            preparedStatement.setInt(2, toYear);
+            if (name != null) {
+                preparedStatement.setString(3, name);
             }
-            resultSet.close();
-            preparedStatement.close();
-            Files.writeString(Path.of("allData.txt"), sb.toString(), UTF_8);
-        } catch (SQLException | IOException e) {
-            e.printStackTrace();
+            preparedStatement.setFetchSize(1000);
+            if (format == DumpFormat.CSV) {
+                writer.write("name,year,month,type,value");
+                writer.write(System.lineSeparator());
+            }
+            try (ResultSet resultSet = preparedStatement.executeQuery()) {
+                while (resultSet.next()) {
+                    format.write(writer,
+                            resultSet.getString(1),
+                            resultSet.getInt(2),
+                            resultSet.getInt(3),
+                            resultSet.getString(4),
+                            resultSet.getInt(5));
+                }
+            }
+        }
+    }
+
+    public enum DumpFormat {
+        TEXT("txt"),
+        CSV("csv"),
+        JSON("ndjson");
+
+        private final String extension;
+
+        DumpFormat(String extension) {
+            this.extension = extension;
         }
 
+        public String getExtension() {
+            return extension;
+        }
+
+        private void write(Writer writer, String name, int year, int month, String type, int value)
+                throws IOException {
+            switch (this) {
+                case TEXT:
+                    writer.write(name + " " + year + " " + month + " " + type + " " + value);
+                    break;
+                case CSV:
+                    writer.write(csvField(name) + "," + year + "," + month + "," + csvField(type) + "," + value);
+                    break;
+                case JSON:
+                    writer.write("{\"name\":" + jsonString(name) + ",\"year\":" + year + ",\"month\":" + month
+                            + ",\"type\":" + jsonString(type) + ",\"value\":" + value + "}");
+                    break;
+            }
+            writer.write(System.lineSeparator());
+        }
+
+        private static String csvField(String str) {
+            if (str.indexOf(',') < 0 && str.indexOf('"') < 0) {
+                return str;
+            }
+            return "\"" + str.replace("\"", "\"\"") + "\"";
+        }
+
+        private static String jsonString(String str) {
+            StringBuilder sb = new StringBuilder(str.length() + 2).append('"');
+            for (char c : str.toCharArray()) {
+                if (c == '"' || c == '\\') {
+                    sb.append('\\').append(c);
+                } else if (c < 0x20) {
+                    sb.append(String.format("\\u%04x", (int) c));
+                } else {
+                    sb.append(c);
+                }
+            }
+            return sb.append('"').toString();
+        }
     }
 
     public void close() throws SQLException {
@@ -0,0 +1,185 @@
+package hu.finominfo.scheduler.util;
+
+import hu.finominfo.scheduler.scheduler.ScheduleSnapshot;
+
+import java.time.DayOfWeek;
+import java.util.*;
+
+/**
+ * The per person statistics of a month. Every day is classified once into a day kind table, then all the
+ * counters are accumulated in a single pass over the roster, so the cost is linear in people + days.
+ * The Friday, Saturday and Sunday counters go by the weekday of the calendar, while the IMS1/IMS2 weekend
+ * counters and isWeekend() go by the weekends of the schedule, which include the bridge days and exclude the
+ * transferred workdays.
+ * The same numbers are rendered into the workbook and stored in the KeyValueStore, for a freshly solved month
+ * and for an archived one alike.
+ */
+public class MonthStatistics {
+
+    public static final List<String> CATEGORIES = List.of("ALL", "FR", "SU", "WE", "NHWD", "NHFR", "NHSA", "NHSU");
+
+    // day kinds
+    public static final int MON_TO_THU = 0;
+    public static final int FRIDAY = 1;
+    public static final int SATURDAY = 2;
+    public static final int SUNDAY = 3;
+    public static final int HOLIDAY = 4;
+
+    public enum Counter {
+        IMS1_WE, IMS1_WD, IMS2_WE, IMS2_WD, NH, ALL, MON_THU, FR, SA, SU, NHWD, NHFR, NHSA, NHSU
+    }
+
+    private final int year;
+    private final int month;
+    private final int numOfDays;
+    private final List<String> names;
+    private final Map<String, Integer> positions = new HashMap<>();
+    private final byte[] dayKinds;
+    private final boolean[] weekends;
+    private final int[] ims1;
+    private final int[] ims2;
+    private final int[][] counters;
+
+    public MonthStatistics(ScheduleSnapshot snapshot) {
+        this.year = snapshot.getYear();
+        this.month = snapshot.getMonthValue();
+        this.numOfDays = snapshot.getNumOfDays();
+        this.names = snapshot.getNames();
+        for (int i = 0; i < names.size(); i++) {
+            positions.put(names.get(i), i);
+        }
+
+        dayKinds = new byte[numOfDays + 1];
+        weekends = new boolean[numOfDays + 1];
+        for (int day = 1; day <= numOfDays; day++) {
+            int flags = snapshot.getDayFlags(day);
+            DayOfWeek dayOfWeek = snapshot.getDate().withDayOfMonth(day).getDayOfWeek();
+            int kind;
+            if (dayOfWeek == DayOfWeek.SATURDAY) {
+                kind = SATURDAY;
+            } else if (dayOfWeek == DayOfWeek.SUNDAY) {
+                kind = SUNDAY;
+            } else if (dayOfWeek == DayOfWeek.FRIDAY) {
+                kind = FRIDAY;
+            } else {
+                kind = MON_TO_THU;
+            }
+            if ((flags & ScheduleSnapshot.DAY_HOLIDAY) != 0) {
+                kind |= HOLIDAY;
+            }
+            dayKinds[day] = (byte) kind;
+            weekends[day] = (flags & (ScheduleSnapshot.DAY_SATURDAY | ScheduleSnapshot.DAY_SUNDAY)) != 0;
+        }
+
+        ims1 = new int[numOfDays + 1];
+        ims2 = new int[numOfDays + 1];
+        counters = new int[names.size()][Counter.values().length];
+        for (int day = 1; day <= numOfDays; day++) {
+            String foName = snapshot.getFoName(day);
+            ims1[day] = -1;
+            ims2[day] = -1;
+            for (String name : snapshot.getScheduled(day)) {
+                int position = positions.get(name);
+                boolean isIms1 = name.equals(foName);
+                if (isIms1) {
+                    ims1[day] = position;
+                } else {
+                    ims2[day] = position;
+                }
+                count(counters[position], dayKinds[day], weekends[day], isIms1);
+            }
+        }
+    }
+
+    private static void count(int[] counter, int kind, boolean weekend, boolean isIms1) {
+        boolean holiday = (kind & HOLIDAY) != 0;
+        int weekday = kind & ~HOLIDAY;
+        counter[Counter.ALL.ordinal()]++;
+        if (isIms1) {
+            counter[(weekend ? Counter.IMS1_WE : Counter.IMS1_WD).ordinal()]++;
+        } else {
+            counter[(weekend ? Counter.IMS2_WE : Counter.IMS2_WD).ordinal()]++;
+        }
+        if (holiday) {
+            counter[Counter.NH.ordinal()]++;
+        }
+        switch (weekday) {
+            case FRIDAY:
+                counter[(holiday ? Counter.NHFR : Counter.FR).ordinal()]++;
+                break;
+            case SATURDAY:
+                counter[(holiday ? Counter.NHSA : Counter.SA).ordinal()]++;
+                break;
+            case SUNDAY:
+                counter[(holiday ? Counter.NHSU : Counter.SU).ordinal()]++;
+                break;
+            default:
+                counter[(holiday ? Counter.NHWD : Counter.MON_THU).ordinal()]++;
+        }
+    }
+
+    public int getYear() {
+        return year;
+    }
+
+    public int getMonth() {
+        return month;
+    }
+
+    public int getNumOfDays() {
+        return numOfDays;
+    }
+
+    public List<String> getNames() {
+        return names;
+    }
+
+    public int getDayKind(int day) {
+        return dayKinds[day];
+    }
+
+    public boolean isHoliday(int day) {
+        return (dayKinds[day] & HOLIDAY) != 0;
+    }
+
+    /**
+     * @return true on the weekends of the schedule
+     */
+    public boolean isWeekend(int day) {
+        return weekends[day];
+    }
+
+    public boolean contains(String name) {
+        return positions.containsKey(name);
+    }
+
+    public boolean isScheduled(String name, int day) {
+        int position = positions.get(name);
+        return ims1[day] == position || ims2[day] == position;
+    }
+
+    public boolean isIms1(String name, int day) {
+        return ims1[day] == positions.get(name);
+    }
+
+    public int get(String name, Counter counter) {
+        return counters[positions.get(name)][counter.ordinal()];
+    }
+
+    /**
+     * The values stored in the KeyValueStore, in the order of CATEGORIES.
+     */
+    public Map<String, Integer> getCategories(String name) {
+        int[] counter = counters[positions.get(name)];
+        Map<String, Integer> values = new LinkedHashMap<>();
+        values.put("ALL", counter[Counter.ALL.ordinal()]);
+        values.put("FR", counter[Counter.FR.ordinal()]);
+        values.put("SU", counter[Counter.SU.ordinal()]);
+        values.put("WE", counter[Counter.SA.ordinal()] + counter[Counter.SU.ordinal()]);
+        values.put("NHWD", counter[Counter.NHWD.ordinal()]);
+        values.put("NHFR", counter[Counter.NHFR.ordinal()]);
+        values.put("NHSA", counter[Counter.NHSA.ordinal()]);
+        values.put("NHSU", counter[Counter.NHSU.ordinal()]);
+        return values;
+    }
+}
@@ -0,0 +1,154 @@
+package hu.finominfo.scheduler.util;
+
+import hu.finominfo.scheduler.scheduler.ScheduleSnapshot;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.util.*;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+/**
+ * Who is IMS1 and IMS2 on a day, for every stored month of the directory and of its teams/&lt;name&gt;
+ * directories. The index is built once from the schedule files and never changes; a lookup is an array index
+ * from the first indexed day. The JSON answer of every day is rendered at build time.
+ */
+public class OnCallIndex {
+
+    public static final String DEFAULT_TEAM = "";
+
+    private static class Team {
+        private final long firstDay;
+        private final String[] ims1;
+        private final String[] ims2;
+        private final byte[][] json;
+
+        private Team(String team, TreeMap<LocalDate, ScheduleSnapshot> months) {
+            firstDay = months.isEmpty() ? 0 : months.firstKey().toEpochDay();
+            int size = months.isEmpty() ? 0 : (int) (months.lastKey().plusMonths(1).toEpochDay() - firstDay);
+            ims1 = new String[size];
+            ims2 = new String[size];
+            json = new byte[size][];
+            months.forEach((date, snapshot) -> {
+                for (int day = 1; day <= snapshot.getNumOfDays(); day++) {
+                    int index = (int) (date.withDayOfMonth(day).toEpochDay() - firstDay);
+                    ims1[index] = snapshot.getFoName(day);
+                    ims2[index] = snapshot.getBoName(day);
+                    json[index] = render(team, date.withDayOfMonth(day), ims1[index], ims2[index]);
+                }
+            });
+        }
+
+        private int index(LocalDate date) {
+            long index = date.toEpochDay() - firstDay;
+            return index < 0 || index >= ims1.length ? -1 : (int) index;
+        }
+    }
+
+    private final Map<String, Team> teams;
+    private final long version;
+
+    private OnCallIndex(Map<String, Team> teams, long version) {
+        this.teams = teams;
+        this.version = version;
+    }
+
+    /**
+     * Reads the schedules of the directory (the default team) and of its teams/&lt;name&gt; directories.
+     */
+    public static OnCallIndex build(Path directory, long version) throws IOException {
+        Map<String, Path> directories = new TreeMap<>();
+        directories.put(DEFAULT_TEAM, directory);
+        Path teamsDirectory = directory.resolve("teams");
+        if (Files.isDirectory(teamsDirectory)) {
+            try (DirectoryStream<Path> stream = Files.newDirectoryStream(teamsDirectory, Files::isDirectory)) {
+                for (Path path : stream) {
+                    directories.put(path.getFileName().toString(), path);
+                }
+            }
+        }
+        Map<String, Team> teams = new HashMap<>();
+        try {
+            for (Map.Entry<String, Path> entry : directories.entrySet()) {
+                TreeMap<LocalDate, ScheduleSnapshot> months = new TreeMap<>();
+                // the bins are read into the heap, the index keeps them until the next reload
+                HistoryBackfill.findSources(entry.getValue()).entrySet().parallelStream()
+                        .map(source -> HistoryBackfill.load(source.getKey(), source.getValue(), false))
+                        .forEachOrdered(snapshot -> months.put(snapshot.getDate().withDayOfMonth(1), snapshot));
+                if (!months.isEmpty() || entry.getKey().equals(DEFAULT_TEAM)) {
+                    teams.put(entry.getKey(), new Team(entry.getKey(), months));
+                }
+            }
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+        return new OnCallIndex(teams, version);
+    }
+
+    /**
+     * @return the names of the teams, the default team is ""
+     */
+    public Set<String> getTeams() {
+        return teams.keySet();
+    }
+
+    /**
+     * @return the version given at build time, it changes with every reload
+     */
+    public long getVersion() {
+        return version;
+    }
+
+    public boolean contains(String team, LocalDate date) {
+        Team found = teams.get(team);
+        return found != null && found.index(date) >= 0 && found.json[found.index(date)] != null;
+    }
+
+    public String getIms1(String team, LocalDate date) {
+        Team found = teams.get(team);
+        int index = found == null ? -1 : found.index(date);
+        return index < 0 ? null : found.ims1[index];
+    }
+
+    public String getIms2(String team, LocalDate date) {
+        Team found = teams.get(team);
+        int index = found == null ? -1 : found.index(date);
+        return index < 0 ? null : found.ims2[index];
+    }
+
+    /**
+     * @return {"team":..,"date":..,"ims1":..,"ims2":..} in UTF-8, null if the day is not scheduled
+     */
+    public byte[] getJson(String team, LocalDate date) {
+        Team found = teams.get(team);
+        int index = found == null ? -1 : found.index(date);
+        return index < 0 ? null : found.json[index];
+    }
+
+    private static byte[] render(String team, LocalDate date, String ims1, String ims2) {
+        return ("{\"team\":" + quote(team) + ",\"date\":\"" + date + "\",\"ims1\":" + quote(ims1)
+                + ",\"ims2\":" + quote(ims2) + "}").getBytes(UTF_8);
+    }
+
+    private static String quote(String str) {
+        if (str == null) {
+            return "null";
+        }
+        StringBuilder sb = new StringBuilder("\"");
+        for (int i = 0; i < str.length(); i++) {
+            char c = str.charAt(i);
+            if (c == '"' || c == '\\') {
+                sb.append('\\').append(c);
+            } else if (c < 0x20) {
+                sb.append(String.format("\\u%04x", (int) c));
+            } else {
+                sb.append(c);
+            }
+        }
+        return sb.append('"').toString();
+    }
+}
@@ -0,0 +1,237 @@
+package hu.finominfo.scheduler.util;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import hu.finominfo.scheduler.common.Globals;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.file.*;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.time.format.DateTimeParseException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+/**
+ * A small local HTTP endpoint for the paging integration:
+ * <pre>
+ * GET /oncall                         who is on duty now
+ * GET /oncall?date=2024-08-05         on a day
+ * GET /oncall?at=2024-08-05T07:30     at an instant (local time), see the handover time of {@link Globals}
+ * GET /oncall?team=blue&amp;date=...     of a team of teams/blue
+ * </pre>
+ * The answers come from an {@link OnCallIndex} in memory, nothing is read from disk while a request is served.
+ * A watcher thread rebuilds the index when a schedule file of the directories is written and swaps it in. The
+ * ETag is the version of the index, so clients revalidate cheaply. The answer for now is revalidated on every
+ * request, so a swap or a new version of the month is seen right after the reload.
+ */
+public class OnCallServer implements AutoCloseable {
+
+    private static final Logger LOGGER = LogManager.getLogger(OnCallServer.class);
+
+    private static final int PAST_MAX_AGE = 60;
+    private static final long RELOAD_DELAY_MILLIS = 500;
+
+    private final Path directory;
+    private final HttpServer server;
+    private final ExecutorService executor;
+    private final Thread watcher;
+    private volatile OnCallIndex index;
+
+    public OnCallServer(Path directory, int port) throws IOException {
+        this.directory = directory;
+        this.index = OnCallIndex.build(directory, System.currentTimeMillis());
+        LOGGER.info("On-call index built for the teams " + index.getTeams());
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", port), 0);
+        executor = Executors.newFixedThreadPool(Math.max(2, Runtime.getRuntime().availableProcessors()), runnable -> {
+            Thread thread = new Thread(runnable, "on-call http");
+            thread.setDaemon(true);
+            return thread;
+        });
+        server.setExecutor(executor);
+        server.createContext("/oncall", this::handle);
+        server.createContext("/health", exchange -> send(exchange, 200, "{\"status\":\"ok\"}".getBytes(UTF_8), null, 0));
+        watcher = new Thread(this::watch, "on-call reload");
+        watcher.setDaemon(true);
+    }
+
+    public void start() {
+        server.start();
+        watcher.start();
+        LOGGER.info("On-call lookup listens on http://127.0.0.1:" + server.getAddress().getPort() + "/oncall");
+    }
+
+    public OnCallIndex getIndex() {
+        return index;
+    }
+
+    @Override
+    public void close() {
+        watcher.interrupt();
+        server.stop(0);
+        executor.shutdownNow();
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        try {
+            if (!"GET".equals(exchange.getRequestMethod()) && !"HEAD".equals(exchange.getRequestMethod())) {
+                send(exchange, 405, error("Only GET is supported"), null, 0);
+                return;
+            }
+            Map<String, String> query = parseQuery(exchange.getRequestURI().getRawQuery());
+            OnCallIndex current = index;
+            String team = query.getOrDefault("team", OnCallIndex.DEFAULT_TEAM);
+            LocalDate date;
+            try {
+                date = query.containsKey("date") ? LocalDate.parse(query.get("date"))
+                        : getDutyDay(query.containsKey("at") ? LocalDateTime.parse(query.get("at")) : LocalDateTime.now());
+            } catch (DateTimeParseException e) {
+                send(exchange, 400, error("Wrong date: " + e.getParsedString()), null, 0);
+                return;
+            }
+            String etag = "\"" + current.getVersion() + "\"";
+            byte[] json = current.getJson(team, date);
+            if (json == null) {
+                send(exchange, 404, error("No schedule for " + date + (team.isEmpty() ? "" : " of " + team)), etag, 0);
+                return;
+            }
+            if (etag.equals(exchange.getRequestHeaders().getFirst("If-None-Match"))) {
+                send(exchange, 304, null, etag, maxAge(query));
+                return;
+            }
+            send(exchange, 200, json, etag, maxAge(query));
+        } catch (RuntimeException e) {
+            LOGGER.error("On-call request failed", e);
+            send(exchange, 500, error("Internal error"), null, 0);
+        }
+    }
+
+    /**
+     * The answer for now may change with any reload, it is only sent with the ETag and no-cache.
+     */
+    private static long maxAge(Map<String, String> query) {
+        return query.containsKey("date") || query.containsKey("at") ? PAST_MAX_AGE : 0;
+    }
+
+    /**
+     * @return the day whose duty is on at the instant: before the handover time it is the day before
+     */
+    static LocalDate getDutyDay(LocalDateTime instant) {
+        LocalTime handover = Globals.getInstance().getHandoverTime();
+        return instant.toLocalTime().isBefore(handover) ? instant.toLocalDate().minusDays(1) : instant.toLocalDate();
+    }
+
+    private static void send(HttpExchange exchange, int status, byte[] body, String etag, long maxAge) throws IOException {
+        exchange.getResponseHeaders().set("Content-Type", "application/json; charset=utf-8");
+        if (etag != null) {
+            exchange.getResponseHeaders().set("ETag", etag);
+        }
+        exchange.getResponseHeaders().set("Cache-Control", maxAge > 0 ? "public, max-age=" + maxAge : "no-cache");
+        boolean head = "HEAD".equals(exchange.getRequestMethod());
+        if (body == null || head) {
+            exchange.sendResponseHeaders(status, -1);
+            exchange.close();
+            return;
+        }
+        exchange.sendResponseHeaders(status, body.length);
+        try (OutputStream outputStream = exchange.getResponseBody()) {
+            outputStream.write(body);
+        }
+    }
+
+    private static byte[] error(String message) {
+        return ("{\"error\":\"" + message.replace("\\", "\\\\").replace("\"", "\\\"") + "\"}").getBytes(UTF_8);
+    }
+
+    private static Map<String, String> parseQuery(String query) {
+        Map<String, String> result = new HashMap<>();
+        if (query == null) {
+            return result;
+        }
+        for (String pair : query.split("&")) {
+            int equals = pair.indexOf('=');
+            if (equals > 0) {
+                result.put(URLDecoder.decode(pair.substring(0, equals), UTF_8), URLDecoder.decode(pair.substring(equals + 1), UTF_8));
+            }
+        }
+        return result;
+    }
+
+    private void watch() {
+        try (WatchService watchService = FileSystems.getDefault().newWatchService()) {
+            register(watchService, directory);
+            Path teams = directory.resolve("teams");
+            if (Files.isDirectory(teams)) {
+                register(watchService, teams);
+                try (DirectoryStream<Path> stream = Files.newDirectoryStream(teams, Files::isDirectory)) {
+                    for (Path path : stream) {
+                        register(watchService, path);
+                    }
+                }
+            }
+            while (!Thread.currentThread().isInterrupted()) {
+                WatchKey key = watchService.take();
+                boolean changed = false;
+                for (WatchEvent<?> event : key.pollEvents()) {
+                    Object context = event.context();
+                    if (event.kind() == StandardWatchEventKinds.OVERFLOW
+                            || (context instanceof Path && context.toString().startsWith("schedule-"))) {
+                        changed = true;
+                    } else if (context instanceof Path && key.watchable().equals(teams)) {
+                        register(watchService, teams.resolve((Path) context));
+                        changed = true;
+                    }
+                }
+                key.reset();
+                if (changed) {
+                    // a month is written by several files, wait until they are all there
+                    TimeUnit.MILLISECONDS.sleep(RELOAD_DELAY_MILLIS);
+                    drain(watchService);
+                    reload();
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (IOException e) {
+            LOGGER.error("The schedule directories can not be watched, there is no reload", e);
+        }
+    }
+
+    private static void register(WatchService watchService, Path path) throws IOException {
+        if (Files.isDirectory(path)) {
+            path.register(watchService, StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_MODIFY,
+                    StandardWatchEventKinds.ENTRY_DELETE);
+        }
+    }
+
+    private static void drain(WatchService watchService) {
+        WatchKey key;
+        while ((key = watchService.poll()) != null) {
+            key.pollEvents();
+            key.reset();
+        }
+    }
+
+    /**
+     * Builds a new index and swaps it in; the requests in progress finish with the old one.
+     */
+    public void reload() {
+        try {
+            index = OnCallIndex.build(directory, System.currentTimeMillis());
+            LOGGER.info("On-call index reloaded");
+        } catch (IOException | RuntimeException e) {
+            LOGGER.error("On-call index reload failed, the previous one is kept", e);
+        }
+    }
+}
@@ -0,0 +1,114 @@
+package hu.finominfo.scheduler.util;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Runs the independent outputs of a solved month (files, exports, database) at the same time, so a run takes
+ * as long as its slowest output instead of the sum of them. Every sink is run to its end even if another one
+ * fails; await() reports all the failures together.
+ */
+public class OutputPipeline implements AutoCloseable {
+
+    private static final Logger LOGGER = LogManager.getLogger(OutputPipeline.class);
+
+    @FunctionalInterface
+    public interface Sink {
+        void write() throws Exception;
+    }
+
+    private final ExecutorService executor;
+    private final Map<String, CompletableFuture<?>> sinks = new LinkedHashMap<>();
+
+    public OutputPipeline() {
+        AtomicInteger counter = new AtomicInteger();
+        this.executor = Executors.newCachedThreadPool(runnable -> {
+            Thread thread = new Thread(runnable, "output-" + counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    public void add(String name, Sink sink) {
+        add(name, CompletableFuture.runAsync(() -> {
+            long start = System.currentTimeMillis();
+            try {
+                sink.write();
+            } catch (RuntimeException e) {
+                throw e;
+            } catch (Exception e) {
+                throw new CompletionException(e);
+            }
+            LOGGER.info(name + " was written in " + (System.currentTimeMillis() - start) + " ms.");
+        }, executor));
+    }
+
+    /**
+     * Adds a sink that is already running elsewhere, e.g. in the StatisticsWriter.
+     */
+    public void add(String name, CompletableFuture<?> future) {
+        if (sinks.putIfAbsent(name, future) != null) {
+            throw new IllegalArgumentException("The sink " + name + " is already added");
+        }
+    }
+
+    /**
+     * Waits for all the sinks.
+     *
+     * @throws OutputException with the failures as suppressed exceptions if any of the sinks failed; every failure
+     *                         is logged with its stack trace here
+     */
+    public void await() {
+        CompletableFuture.allOf(sinks.values().toArray(new CompletableFuture<?>[0]))
+                .exceptionally(e -> null)
+                .join();
+        List<String> failed = new ArrayList<>();
+        List<Throwable> causes = new ArrayList<>();
+        sinks.forEach((name, future) -> {
+            try {
+                future.join();
+            } catch (CompletionException e) {
+                Throwable cause = e.getCause() == null ? e : e.getCause();
+                LOGGER.error("Writing " + name + " failed", cause);
+                failed.add(name);
+                causes.add(cause);
+            }
+        });
+        if (!failed.isEmpty()) {
+            OutputException exception = new OutputException("Writing " + String.join(", ", failed) + " failed", failed);
+            causes.forEach(exception::addSuppressed);
+            throw exception;
+        }
+    }
+
+    @Override
+    public void close() {
+        executor.shutdown();
+    }
+
+    public static class OutputException extends RuntimeException {
+
+        private static final long serialVersionUID = 1L;
+
+        private final List<String> failedSinks;
+
+        public OutputException(String message, List<String> failedSinks) {
+            super(message);
+            this.failedSinks = failedSinks;
+        }
+
+        public List<String> getFailedSinks() {
+            return failedSinks;
+        }
+    }
+}
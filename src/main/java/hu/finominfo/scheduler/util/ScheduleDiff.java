@@ -0,0 +1,145 @@
+package hu.finominfo.scheduler.util;
+
+import hu.finominfo.scheduler.scheduler.ScheduleSnapshot;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+/**
+ * The changed assignments of a re-solved month compared to the previously published version, day by day:
+ * who was added, who was removed and whose role flipped between IMS1 and IMS2.
+ */
+public class ScheduleDiff {
+
+    public static final String IMS1 = "IMS1";
+    public static final String IMS2 = "IMS2";
+
+    public enum Kind {
+        ADDED, REMOVED, ROLE_CHANGED
+    }
+
+    public static class Change {
+        private final LocalDate date;
+        private final Kind kind;
+        private final String name;
+        private final String role;
+        private final String previousRole;
+
+        public Change(LocalDate date, Kind kind, String name, String role, String previousRole) {
+            this.date = date;
+            this.kind = kind;
+            this.name = name;
+            this.role = role;
+            this.previousRole = previousRole;
+        }
+
+        public LocalDate getDate() {
+            return date;
+        }
+
+        public Kind getKind() {
+            return kind;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        /**
+         * @return the new role, null if the person was removed
+         */
+        public String getRole() {
+            return role;
+        }
+
+        /**
+         * @return the role before, null if the person was added
+         */
+        public String getPreviousRole() {
+            return previousRole;
+        }
+    }
+
+    private final ScheduleSnapshot current;
+    private final List<Change> changes;
+
+    private ScheduleDiff(ScheduleSnapshot current, List<Change> changes) {
+        this.current = current;
+        this.changes = Collections.unmodifiableList(changes);
+    }
+
+    public static ScheduleDiff compare(ScheduleSnapshot previous, ScheduleSnapshot current) {
+        if (previous.getYear() != current.getYear() || previous.getMonthValue() != current.getMonthValue()) {
+            throw new IllegalArgumentException("The snapshots are of different months: " + previous.getDate()
+                    + ", " + current.getDate());
+        }
+        List<Change> changes = new ArrayList<>();
+        for (int day = 1; day <= current.getNumOfDays(); day++) {
+            LocalDate date = current.getDate().withDayOfMonth(day);
+            Set<String> before = previous.getScheduled(day);
+            Set<String> after = current.getScheduled(day);
+            Set<String> names = new LinkedHashSet<>(before);
+            names.addAll(after);
+            for (String name : names) {
+                String previousRole = before.contains(name) ? role(previous, day, name) : null;
+                String role = after.contains(name) ? role(current, day, name) : null;
+                if (previousRole == null) {
+                    changes.add(new Change(date, Kind.ADDED, name, role, null));
+                } else if (role == null) {
+                    changes.add(new Change(date, Kind.REMOVED, name, null, previousRole));
+                } else if (!role.equals(previousRole)) {
+                    changes.add(new Change(date, Kind.ROLE_CHANGED, name, role, previousRole));
+                }
+            }
+        }
+        return new ScheduleDiff(current, changes);
+    }
+
+    static String role(ScheduleSnapshot snapshot, int day, String name) {
+        return name.equals(snapshot.getFoName(day)) ? IMS1 : IMS2;
+    }
+
+    public ScheduleSnapshot getCurrent() {
+        return current;
+    }
+
+    public List<Change> getChanges() {
+        return changes;
+    }
+
+    public boolean isEmpty() {
+        return changes.isEmpty();
+    }
+
+    /**
+     * Writes the change set as csv: date,change,name,role,previous role
+     */
+    public void write(Path path) throws IOException {
+        try (Writer writer = Files.newBufferedWriter(path, UTF_8)) {
+            writer.write("date,change,name,role,previousRole\n");
+            for (Change change : changes) {
+                writer.write(change.date.toString());
+                writer.write(',');
+                writer.write(change.kind.name());
+                writer.write(',');
+                writer.write(change.name.indexOf(',') < 0 && change.name.indexOf('"') < 0
+                        ? change.name : "\"" + change.name.replace("\"", "\"\"") + "\"");
+                writer.write(',');
+                writer.write(change.role == null ? "" : change.role);
+                writer.write(',');
+                writer.write(change.previousRole == null ? "" : change.previousRole);
+                writer.write('\n');
+            }
+        }
+    }
+}
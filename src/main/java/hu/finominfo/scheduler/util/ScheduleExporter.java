@@ -0,0 +1,52 @@
+package hu.finominfo.scheduler.util;
+
+import hu.finominfo.scheduler.scheduler.ScheduleSnapshot;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Writes a solved month in one output format. The implementations are created by name through create(), so a
+ * format, and the libraries behind it, is only loaded when it is requested.
+ */
+public interface ScheduleExporter {
+
+    /**
+     * Writes the files into the directory.
+     */
+    void export(ScheduleSnapshot snapshot, Path directory) throws IOException;
+
+    default void export(ScheduleSnapshot snapshot) throws IOException {
+        export(snapshot, Paths.get(""));
+    }
+
+    /**
+     * @param format xlsx, json, ics or csv
+     */
+    static ScheduleExporter create(String format) {
+        switch (format.trim().toLowerCase()) {
+            case "xlsx":
+                // ExcelExporter, and with it POI, is loaded at the first export
+                return (snapshot, directory) -> new ExcelExporter(snapshot, directory).writeMonthToExcel();
+            case "json":
+                return new JsonScheduleExporter();
+            case "ics":
+                return new IcsScheduleExporter();
+            case "csv":
+                return new CsvScheduleExporter();
+            default:
+                throw new IllegalArgumentException("Unknown export format: " + format);
+        }
+    }
+
+    static List<ScheduleExporter> create(List<String> formats) {
+        List<ScheduleExporter> exporters = new ArrayList<>();
+        for (String format : formats) {
+            exporters.add(create(format));
+        }
+        return exporters;
+    }
+}
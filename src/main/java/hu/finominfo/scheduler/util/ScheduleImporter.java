@@ -0,0 +1,91 @@
+package hu.finominfo.scheduler.util;
+
+import hu.finominfo.scheduler.common.Globals;
+import hu.finominfo.scheduler.people.People;
+import hu.finominfo.scheduler.people.Person;
+import hu.finominfo.scheduler.scheduler.ScheduleSnapshot;
+import hu.finominfo.scheduler.scheduler.ScheduleValidator;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.SQLException;
+import java.util.*;
+import java.util.stream.Collectors;
+
+/**
+ * Takes a hand edited schedule-YYYY-M.xlsx back: the grid is read with the streaming reader, checked by the
+ * ScheduleValidator and, if it breaks no hard rule, becomes the published version of the month in the directory
+ * of the roster (e.g. of a team). A month which is already published is checked against the constraints stored
+ * in its snapshot, which keeps them; a new one against config.csv of the directory. The month statistics are
+ * replaced in the KeyValueStore in one transaction, the history index and the bin snapshot are updated too.
+ */
+public class ScheduleImporter {
+
+    private static final Logger LOGGER = LogManager.getLogger(ScheduleImporter.class);
+
+    private final Path path;
+    private final Path directory;
+
+    /**
+     * Imports into the directory of the workbook.
+     */
+    public ScheduleImporter(Path path) {
+        this(path, path.toAbsolutePath().getParent());
+    }
+
+    public ScheduleImporter(Path path, Path directory) {
+        this.path = path;
+        this.directory = directory;
+    }
+
+    public ScheduleSnapshot run() throws IOException, SQLException {
+        ExcelScheduleReader grid = ExcelScheduleReader.parse(path);
+        Path binPath = directory.resolve(ScheduleSnapshot.fileName(grid.getDate(), "bin"));
+        ScheduleSnapshot stored = Files.exists(binPath) ? ScheduleSnapshot.read(binPath) : null;
+        ScheduleValidator validator;
+        List<Person> persons = new ArrayList<>();
+        if (stored != null) {
+            validator = ScheduleValidator.of(stored);
+        } else {
+            Map<String, Person> people = new People(directory.resolve(Globals.getInstance().getConfigFile()), directory)
+                    .getPeople();
+            for (String name : grid.getNames()) {
+                persons.add(people.getOrDefault(name, new Person(name)));
+            }
+            validator = ScheduleValidator.of(grid.getDate(), people.values());
+        }
+        List<ScheduleValidator.Violation> violations = validator.validate(grid.getScheduled(), grid.getIms1Names());
+        if (ScheduleValidator.hasHard(violations)) {
+            throw new RuntimeException(path + " breaks the rules:" + System.lineSeparator() + violations
+                    .stream()
+                    .filter(ScheduleValidator.Violation::isHard)
+                    .map(Object::toString)
+                    .collect(Collectors.joining(System.lineSeparator())));
+        }
+        violations.forEach(violation -> LOGGER.warn(violation));
+        ScheduleSnapshot snapshot = stored != null
+                ? stored.withAssignments(grid.getScheduled(), grid.getFoNames())
+                : ScheduleSnapshot.create(grid.getDate(), grid.getScheduled(), grid.getFoNames(), persons);
+
+        KeyValueStore keyValueStore = new KeyValueStore(directory);
+        try {
+            keyValueStore.createDatabase();
+            keyValueStore.writeAll(List.of(new MonthStatistics(snapshot)));
+        } finally {
+            keyValueStore.close();
+        }
+        Map<String, Integer> monthAmount = new HashMap<>();
+        snapshot.getNames().forEach(name -> monthAmount.put(name, snapshot.getScheduledDays(name).size()));
+        HistoryIndex historyIndex = new HistoryIndex(directory.resolve("schedule-history.idx"));
+        if (!historyIndex.exists()) {
+            historyIndex.importCsv();
+        }
+        historyIndex.appendMonth(snapshot.getYear(), snapshot.getMonthValue(), monthAmount);
+        snapshot.write(binPath);
+        LOGGER.info(path + " was imported into " + directory.toAbsolutePath() + ".");
+        return snapshot;
+    }
+}
@@ -0,0 +1,101 @@
+package hu.finominfo.scheduler.util;
+
+import hu.finominfo.scheduler.common.Globals;
+import hu.finominfo.scheduler.scheduler.ScheduleSnapshot;
+import hu.finominfo.scheduler.scheduler.SolveRequest;
+
+import java.io.*;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+
+/**
+ * A connection to a {@link SolveWorker}, used by one thread at a time.
+ */
+public class SolveClient implements AutoCloseable {
+
+    private static final int CONNECT_TIMEOUT_MILLIS = 5000;
+
+    private final InetSocketAddress address;
+    private final Socket socket;
+    private final DataInputStream in;
+    private final DataOutputStream out;
+    private final int threads;
+
+    public SolveClient(InetSocketAddress address) throws IOException {
+        this.address = address;
+        socket = new Socket();
+        try {
+            socket.connect(address, CONNECT_TIMEOUT_MILLIS);
+            socket.setTcpNoDelay(true);
+            socket.setSoTimeout(CONNECT_TIMEOUT_MILLIS);
+            in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+            out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+            if (in.readInt() != SolveWorker.MAGIC) {
+                throw new IOException(address + " is not a solve worker");
+            }
+            int version = in.readShort();
+            if (version != SolveWorker.VERSION) {
+                throw new IOException("Unsupported solve worker version of " + address + ": " + version);
+            }
+            threads = in.readShort();
+            socket.setSoTimeout(Globals.getInstance().getSolveTimeoutSeconds() * 1000);
+        } catch (IOException e) {
+            socket.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Parses host:port, the host defaults to localhost.
+     */
+    public static InetSocketAddress parseAddress(String str) {
+        int colon = str.lastIndexOf(':');
+        if (colon < 0) {
+            return new InetSocketAddress("localhost", Integer.parseInt(str));
+        }
+        String host = str.substring(0, colon);
+        return new InetSocketAddress(host.isEmpty() ? "localhost" : host, Integer.parseInt(str.substring(colon + 1)));
+    }
+
+    public InetSocketAddress getAddress() {
+        return address;
+    }
+
+    /**
+     * @return the number of months the worker solves at the same time
+     */
+    public int getThreads() {
+        return threads;
+    }
+
+    /**
+     * @throws IOException if the worker is lost, also if it does not answer in the solve timeout
+     * @throws RuntimeException with the message of the worker if the month can not be solved
+     */
+    public ScheduleSnapshot solve(SolveRequest request) throws IOException {
+        request.write(out);
+        out.flush();
+        int status;
+        try {
+            status = in.readByte();
+        } catch (SocketTimeoutException e) {
+            throw new IOException("No answer of " + address + " in "
+                    + Globals.getInstance().getSolveTimeoutSeconds() + " seconds", e);
+        }
+        if (status == SolveWorker.OK) {
+            byte[] bytes = new byte[in.readInt()];
+            in.readFully(bytes);
+            return ScheduleSnapshot.read(bytes);
+        }
+        if (status == SolveWorker.FAILED) {
+            throw new RuntimeException(in.readUTF());
+        }
+        throw new IOException("Wrong answer of " + address + ": " + status);
+    }
+
+    @Override
+    public void close() throws IOException {
+        socket.close();
+    }
+}
@@ -0,0 +1,142 @@
+package hu.finominfo.scheduler.util;
+
+import hu.finominfo.scheduler.scheduler.ScheduleSnapshot;
+import hu.finominfo.scheduler.scheduler.SolveRequest;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.*;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Solves months of teams for a coordinator ({@link SolveClient}) on other JVMs or hosts. The protocol over TCP
+ * (big endian):
+ * <pre>
+ * worker:      magic (int), version (short), number of solving threads (short)
+ * then on every request of the connection:
+ * coordinator: a {@link SolveRequest}
+ * worker:      OK (byte), length (int), the {@link ScheduleSnapshot} bytes
+ *          or  FAILED (byte), the message of the Scheduler (UTF), if the month can not be solved or the
+ *              request is wrong
+ * </pre>
+ * A connection solves one month at a time, the coordinator opens as many connections as the worker has threads.
+ */
+public class SolveWorker implements AutoCloseable {
+
+    private static final Logger LOGGER = LogManager.getLogger(SolveWorker.class);
+
+    public static final int MAGIC = 0x534C5652; // "SLVR"
+    public static final int VERSION = 1;
+    public static final int OK = 0;
+    public static final int FAILED = 1;
+    public static final String DEFAULT_BIND_ADDRESS = "127.0.0.1";
+
+    private final ServerSocket serverSocket;
+    private final ExecutorService executor;
+    private final Thread acceptor;
+    private final int threads;
+
+    /**
+     * Listens on the loopback interface only, for coordinators on the same host.
+     */
+    public SolveWorker(int port) throws IOException {
+        this(DEFAULT_BIND_ADDRESS, port);
+    }
+
+    /**
+     * @param bindAddress the address of the interface the coordinators of other hosts reach the worker on
+     */
+    public SolveWorker(String bindAddress, int port) throws IOException {
+        threads = Runtime.getRuntime().availableProcessors();
+        serverSocket = new ServerSocket();
+        serverSocket.bind(new InetSocketAddress(bindAddress, port));
+        executor = Executors.newCachedThreadPool(runnable -> {
+            Thread thread = new Thread(runnable, "solve worker");
+            thread.setDaemon(true);
+            return thread;
+        });
+        acceptor = new Thread(this::accept, "solve worker accept");
+        acceptor.setDaemon(true);
+    }
+
+    public void start() {
+        acceptor.start();
+        LOGGER.info("Solve worker listens on " + serverSocket.getInetAddress().getHostAddress() + ":" + getPort()
+                + " with " + threads + " threads");
+    }
+
+    public int getPort() {
+        return serverSocket.getLocalPort();
+    }
+
+    @Override
+    public void close() {
+        try {
+            serverSocket.close();
+        } catch (IOException e) {
+            LOGGER.warn("Solve worker socket can not be closed", e);
+        }
+        executor.shutdownNow();
+    }
+
+    private void accept() {
+        while (!serverSocket.isClosed()) {
+            try {
+                Socket socket = serverSocket.accept();
+                executor.execute(() -> serve(socket));
+            } catch (IOException e) {
+                if (!serverSocket.isClosed()) {
+                    LOGGER.error("Solve worker can not accept", e);
+                }
+            }
+        }
+    }
+
+    private void serve(Socket socket) {
+        try (socket;
+             DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+             DataOutputStream out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()))) {
+            socket.setTcpNoDelay(true);
+            out.writeInt(MAGIC);
+            out.writeShort(VERSION);
+            out.writeShort(threads);
+            out.flush();
+            while (true) {
+                SolveRequest request;
+                try {
+                    request = SolveRequest.read(in);
+                } catch (EOFException e) {
+                    return;
+                } catch (RuntimeException e) {
+                    // the request was read to its end, the connection can go on
+                    LOGGER.warn("Wrong solve request: " + e.getMessage());
+                    out.writeByte(FAILED);
+                    out.writeUTF("Wrong solve request: " + e.getMessage());
+                    out.flush();
+                    continue;
+                }
+                try {
+                    byte[] bytes = request.solve().toBytes();
+                    out.writeByte(OK);
+                    out.writeInt(bytes.length);
+                    out.write(bytes);
+                    LOGGER.info("Solved " + request.getDate().getYear() + "-" + request.getDate().getMonthValue()
+                            + " of " + request.getTeam());
+                } catch (RuntimeException e) {
+                    out.writeByte(FAILED);
+                    out.writeUTF(String.valueOf(e.getMessage()));
+                }
+                out.flush();
+            }
+        } catch (SocketException e) {
+            LOGGER.debug("Solve connection closed: " + e.getMessage());
+        } catch (IOException e) {
+            LOGGER.error("Solve connection failed", e);
+        }
+    }
+}
@@ -0,0 +1,193 @@
+package hu.finominfo.scheduler.util;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.IOException;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.stream.Collectors;
+
+/**
+ * Write-behind persistence stage of the monthly statistics. Months are handed over through a bounded queue and
+ * written by a dedicated thread in batches, one transaction per batch, so the caller never waits for the
+ * database. The returned futures complete when the data is committed. Pending work is flushed by close() and
+ * by a shutdown hook.
+ */
+public class StatisticsWriter implements AutoCloseable {
+
+    private static final Logger LOGGER = LogManager.getLogger(StatisticsWriter.class);
+
+    private static final int QUEUE_CAPACITY = 64;
+    private static final int MAX_BATCH = 32;
+
+    private final BlockingQueue<Task> queue = new ArrayBlockingQueue<>(QUEUE_CAPACITY);
+    private final KeyValueStore keyValueStore;
+    private final Thread thread;
+    private final Thread shutdownHook;
+    private volatile boolean closed = false;
+    private volatile boolean stopped = false;
+
+    public StatisticsWriter() {
+        this(new KeyValueStore());
+    }
+
+    public StatisticsWriter(KeyValueStore keyValueStore) {
+        this.keyValueStore = keyValueStore;
+        this.thread = new Thread(this::run, "statistics-writer");
+        this.thread.setDaemon(true);
+        this.thread.start();
+        this.shutdownHook = new Thread(this::close, "statistics-writer-shutdown");
+        Runtime.getRuntime().addShutdownHook(shutdownHook);
+    }
+
+    public CompletableFuture<Void> submit(MonthStatistics monthStatistics) {
+        return enqueue(new Task(monthStatistics, 0));
+    }
+
+    /**
+     * Writes allData.txt of the year after every previously submitted month is committed.
+     */
+    public CompletableFuture<Void> printAll(int year) {
+        return enqueue(new Task(null, year));
+    }
+
+    private CompletableFuture<Void> enqueue(Task task) {
+        if (closed) {
+            throw new IllegalStateException("The statistics writer is closed");
+        }
+        try {
+            queue.put(task);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            task.future.completeExceptionally(e);
+        }
+        if (stopped) {
+            failPending(new ArrayList<>());
+        }
+        return task.future;
+    }
+
+    private void run() {
+        List<Task> batch = new ArrayList<>();
+        try {
+            while (true) {
+                try {
+                    batch.add(queue.take());
+                } catch (InterruptedException e) {
+                    break;
+                }
+                queue.drainTo(batch, MAX_BATCH - 1);
+                boolean stop = process(batch);
+                batch.clear();
+                if (stop) {
+                    break;
+                }
+            }
+        } finally {
+            stopped = true;
+            failPending(batch);
+        }
+    }
+
+    /**
+     * Fails the tasks which will never be written, because the writer thread has stopped.
+     */
+    private void failPending(List<Task> tasks) {
+        queue.drainTo(tasks);
+        IllegalStateException stoppedException = new IllegalStateException("The statistics writer has stopped");
+        tasks.forEach(task -> task.future.completeExceptionally(stoppedException));
+    }
+
+    private boolean process(List<Task> batch) {
+        List<Task> months = new ArrayList<>();
+        for (int i = 0; i < batch.size(); i++) {
+            Task task = batch.get(i);
+            if (task.isPoison()) {
+                write(months);
+                task.future.complete(null);
+                // enqueued while the writer was closing
+                failPending(new ArrayList<>(batch.subList(i + 1, batch.size())));
+                return true;
+            }
+            if (task.monthStatistics != null) {
+                months.add(task);
+            } else {
+                write(months);
+                months.clear();
+                try {
+                    keyValueStore.printAll(task.year);
+                    task.future.complete(null);
+                } catch (SQLException | IOException | RuntimeException e) {
+                    LOGGER.error(e);
+                    task.future.completeExceptionally(e);
+                }
+            }
+        }
+        write(months);
+        return false;
+    }
+
+    private void write(List<Task> months) {
+        if (months.isEmpty()) {
+            return;
+        }
+        try {
+            keyValueStore.writeAll(months.stream().map(task -> task.monthStatistics).collect(Collectors.toList()));
+            months.forEach(task -> task.future.complete(null));
+        } catch (SQLException | RuntimeException e) {
+            LOGGER.error(e);
+            months.forEach(task -> task.future.completeExceptionally(e));
+        }
+    }
+
+    /**
+     * Stops accepting new months, waits until the queued ones are committed and closes the database.
+     */
+    @Override
+    public synchronized void close() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        try {
+            Runtime.getRuntime().removeShutdownHook(shutdownHook);
+        } catch (IllegalStateException e) {
+            // the JVM is already shutting down, this is the hook itself
+        }
+        Task poison = new Task(null, -1);
+        try {
+            queue.put(poison);
+            if (stopped) {
+                failPending(new ArrayList<>());
+            }
+            thread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        try {
+            keyValueStore.close();
+        } catch (SQLException e) {
+            LOGGER.error(e);
+        }
+    }
+
+    private static class Task {
+        private final MonthStatistics monthStatistics;
+        private final int year;
+        private final CompletableFuture<Void> future = new CompletableFuture<>();
+
+        private Task(MonthStatistics monthStatistics, int year) {
+            this.monthStatistics = monthStatistics;
+            this.year = year;
+        }
+
+        private boolean isPoison() {
+            return monthStatistics == null && year < 0;
+        }
+    }
+}
@@ -0,0 +1,200 @@
+package hu.finominfo.scheduler.util;
+
+import hu.finominfo.scheduler.common.Globals;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.DateTimeException;
+import java.time.DayOfWeek;
+import java.time.LocalDate;
+import java.time.Month;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * The kind of every day of a year: weekday, weekend, holiday, transferred workday (a weekend day worked in
+ * place of a bridge day) or bridge day (a weekday off). The table of a year is computed once from the Hungarian
+ * holidays and the calendar file, then it is shared by every solve, export and check; a lookup is an array
+ * index. Every day also has the weekday it counts as: a transferred workday counts as the weekday given in the
+ * file (Monday if none), a bridge day counts as a Saturday.
+ * <p>
+ * The calendar file ({@link Globals#getCalendarFile()}) has one day per line, e.g.
+ * <pre>
+ * 2024-08-03 workday monday
+ * 2024-08-19 bridge
+ * 2024-12-24 holiday
+ * 2025-05-01 weekday
+ * </pre>
+ * where weekday takes a day off the holidays. Lines starting with # are comments.
+ */
+public class WorkCalendar {
+
+    private static final Logger LOGGER = LogManager.getLogger(WorkCalendar.class);
+
+    public enum DayKind {
+        WEEKDAY, WEEKEND, HOLIDAY, WORKDAY, BRIDGE
+    }
+
+    private static final DayKind[] KINDS = DayKind.values();
+    private static final DayOfWeek[] DAYS_OF_WEEK = DayOfWeek.values();
+
+    /**
+     * The transferred days which were hard-coded before the calendar file existed.
+     */
+    private static final String DEFAULTS = "2024-08-03 workday monday\n2024-08-19 bridge\n";
+
+    private static final Map<Integer, WorkCalendar> YEARS = new ConcurrentHashMap<>();
+    private static volatile Map<LocalDate, Integer> overrides;
+
+    private final int year;
+    // kind in the lower 3 bits, the value of the weekday it counts as above
+    private final byte[] days;
+
+    private WorkCalendar(int year, Map<LocalDate, Integer> overrides) {
+        this.year = year;
+        LocalDate first = LocalDate.of(year, 1, 1);
+        days = new byte[first.lengthOfYear() + 1];
+        for (LocalDate date = first; date.getYear() == year; date = date.plusDays(1)) {
+            DayOfWeek dayOfWeek = date.getDayOfWeek();
+            DayKind kind = dayOfWeek == DayOfWeek.SATURDAY || dayOfWeek == DayOfWeek.SUNDAY ? DayKind.WEEKEND : DayKind.WEEKDAY;
+            days[date.getDayOfYear()] = encode(kind, dayOfWeek);
+        }
+        for (LocalDate holiday : HungarianHolidays.getHolidaysForYear(year)) {
+            days[holiday.getDayOfYear()] = encode(DayKind.HOLIDAY, holiday.getDayOfWeek());
+        }
+        overrides.forEach((date, value) -> {
+            if (date.getYear() == year) {
+                days[date.getDayOfYear()] = (byte) (int) value;
+            }
+        });
+    }
+
+    private static byte encode(DayKind kind, DayOfWeek countsAs) {
+        return (byte) (kind.ordinal() | countsAs.getValue() << 3);
+    }
+
+    public static WorkCalendar of(int year) {
+        return YEARS.computeIfAbsent(year, y -> new WorkCalendar(y, getOverrides()));
+    }
+
+    public static DayKind getKind(LocalDate date) {
+        return of(date.getYear()).getKind(date.getDayOfYear());
+    }
+
+    /**
+     * @return the weekday the date counts as
+     */
+    public static DayOfWeek getDayOfWeek(LocalDate date) {
+        return of(date.getYear()).getDayOfWeek(date.getDayOfYear());
+    }
+
+    public int getYear() {
+        return year;
+    }
+
+    public DayKind getKind(int dayOfYear) {
+        return KINDS[days[dayOfYear] & 7];
+    }
+
+    public DayOfWeek getDayOfWeek(int dayOfYear) {
+        return DAYS_OF_WEEK[(days[dayOfYear] >> 3) - 1];
+    }
+
+    public boolean isHoliday(int dayOfYear) {
+        return getKind(dayOfYear) == DayKind.HOLIDAY;
+    }
+
+    /**
+     * @return the days of the month which count as the given weekday
+     */
+    public List<Integer> getDays(Month month, DayOfWeek dayOfWeek) {
+        List<Integer> result = new ArrayList<>();
+        int offset = LocalDate.of(year, month, 1).getDayOfYear() - 1;
+        for (int day = 1; day <= month.length(LocalDate.ofYearDay(year, 1).isLeapYear()); day++) {
+            if (getDayOfWeek(offset + day) == dayOfWeek) {
+                result.add(day);
+            }
+        }
+        return result;
+    }
+
+    public List<Integer> getHolidays(Month month) {
+        List<Integer> result = new ArrayList<>();
+        int offset = LocalDate.of(year, month, 1).getDayOfYear() - 1;
+        for (int day = 1; day <= month.length(LocalDate.ofYearDay(year, 1).isLeapYear()); day++) {
+            if (isHoliday(offset + day)) {
+                result.add(day);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Reads the calendar file again and drops the computed years.
+     */
+    public static synchronized void reload() {
+        overrides = null;
+        YEARS.clear();
+    }
+
+    private static Map<LocalDate, Integer> getOverrides() {
+        Map<LocalDate, Integer> result = overrides;
+        if (result == null) {
+            synchronized (WorkCalendar.class) {
+                result = overrides;
+                if (result == null) {
+                    result = new HashMap<>();
+                    parse("defaults", DEFAULTS, result);
+                    Path path = Paths.get(Globals.getInstance().getCalendarFile());
+                    if (Files.exists(path)) {
+                        try {
+                            parse(path.toString(), new String(Files.readAllBytes(path), StandardCharsets.UTF_8), result);
+                        } catch (IOException e) {
+                            throw new RuntimeException("Can not read " + path, e);
+                        }
+                        LOGGER.info("Calendar read from " + path);
+                    }
+                    overrides = result;
+                }
+            }
+        }
+        return result;
+    }
+
+    private static void parse(String source, String content, Map<LocalDate, Integer> result) {
+        String[] lines = content.split("\\r?\\n");
+        for (int i = 0; i < lines.length; i++) {
+            String line = lines[i].trim();
+            if (line.isEmpty() || line.startsWith("#")) {
+                continue;
+            }
+            String[] parts = line.split("[\\s,]+");
+            try {
+                LocalDate date = LocalDate.parse(parts[0]);
+                DayKind kind = DayKind.valueOf(parts.length > 1 ? parts[1].toUpperCase() : "");
+                DayOfWeek countsAs;
+                switch (kind) {
+                    case WORKDAY:
+                        countsAs = parts.length > 2 ? DayOfWeek.valueOf(parts[2].toUpperCase()) : DayOfWeek.MONDAY;
+                        break;
+                    case BRIDGE:
+                        countsAs = DayOfWeek.SATURDAY;
+                        break;
+                    case WEEKEND:
+                        countsAs = date.getDayOfWeek() == DayOfWeek.SUNDAY ? DayOfWeek.SUNDAY : DayOfWeek.SATURDAY;
+                        break;
+                    default:
+                        countsAs = date.getDayOfWeek();
+                }
+                result.put(date, (int) encode(kind, countsAs));
+            } catch (DateTimeException | IllegalArgumentException e) {
+                throw new RuntimeException(source + ":" + (i + 1) + ": wrong calendar line: " + line, e);
+            }
+        }
+    }
+}
@@ -0,0 +1,93 @@
+package hu.finominfo.scheduler.util;
+
+import java.util.Map;
+
+/**
+ * The yearly totals of a person up to the end of a month: the sums of the earlier months of the year plus the
+ * current month, together with the standby hours derived from them.
+ */
+public class YearToDate {
+
+    private final long all;
+    private final long fr;
+    private final long su;
+    private final long we;
+    private final long nhwd;
+    private final long nhfr;
+    private final long nhsa;
+    private final long nhsu;
+
+    public YearToDate(Map<String, Integer> previous, Map<String, Integer> current) {
+        all = value(previous, current, "ALL"); //Ebben benne vannak az ünnepek is
+        fr = value(previous, current, "FR");
+        su = value(previous, current, "SU");
+        we = value(previous, current, "WE");
+        nhwd = value(previous, current, "NHWD");
+        nhfr = value(previous, current, "NHFR");
+        nhsa = value(previous, current, "NHSA");
+        nhsu = value(previous, current, "NHSU");
+    }
+
+    private static long value(Map<String, Integer> previous, Map<String, Integer> current, String type) {
+        return previous.getOrDefault(type, 0) + current.getOrDefault(type, 0);
+    }
+
+    public long getAll() {
+        return all;
+    }
+
+    public long getFr() {
+        return fr;
+    }
+
+    public long getSa() {
+        return we - su;
+    }
+
+    public long getSu() {
+        return su;
+    }
+
+    public long getWeekend() {
+        return we + nhsa + nhsu;
+    }
+
+    public long getNh() {
+        return nhwd + nhfr + nhsa + nhsu;
+    }
+
+    public long getMonToThu() {
+        return all - (we + nhsa + nhsu) - (fr + nhfr) - nhwd;
+    }
+
+    public double getWeekendStandby() {
+        return 3.6 * fr + 9.6 * getSa() + 6 * su + 9.6 * getNh();
+    }
+
+    public double getWeekdayStandby() {
+        return 3.2 * getMonToThu() + 1.4 * fr + 1.8 * su;
+    }
+
+    public double getStandby() {
+        return getWeekendStandby() + getWeekdayStandby();
+    }
+
+    /**
+     * The standby hours of a single day of the given MonthStatistics day kind, with the weights of getStandby().
+     */
+    public static double getStandby(int dayKind) {
+        if ((dayKind & MonthStatistics.HOLIDAY) != 0) {
+            return 9.6;
+        }
+        switch (dayKind) {
+            case MonthStatistics.FRIDAY:
+                return 3.6 + 1.4;
+            case MonthStatistics.SATURDAY:
+                return 9.6;
+            case MonthStatistics.SUNDAY:
+                return 6 + 1.8;
+            default:
+                return 3.2;
+        }
+    }
+}
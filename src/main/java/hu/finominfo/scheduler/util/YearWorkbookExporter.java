@@ -0,0 +1,163 @@
+package hu.finominfo.scheduler.util;
+
+import hu.finominfo.scheduler.common.Globals;
+import hu.finominfo.scheduler.scheduler.ScheduleSnapshot;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.apache.poi.ss.usermodel.*;
+import org.apache.poi.xssf.streaming.SXSSFWorkbook;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+
+/**
+ * Writes the stored months of a year into one workbook, schedule-YYYY.xlsx, with a sheet per month and a year
+ * summary sheet. The schedules are loaded and their statistics computed concurrently, then the sheets are
+ * rendered one after the other into a single streaming workbook with one shared style palette, as a POI
+ * workbook must not be used from several threads. The year to date values come from the months found in the
+ * directory, not from the KeyValueStore.
+ */
+public class YearWorkbookExporter {
+
+    private static final Logger LOGGER = LogManager.getLogger(YearWorkbookExporter.class);
+
+    private static final String[] TOTAL_HEADERS = {
+            "MON-\nTHU", "FR", "SA", "SU", "WE", "NH", "ALL", "WE\nSTANDBY", "WD\nSTANDBY", "STANDBY\nSUM"
+    };
+
+    private final Path directory;
+    private final int year;
+
+    public YearWorkbookExporter(Path directory, int year) {
+        this.directory = directory;
+        this.year = year;
+    }
+
+    public Path write() throws IOException {
+        List<CompletableFuture<Month>> futures = new ArrayList<>();
+        for (Map.Entry<LocalDate, Path> source : HistoryBackfill.findSources(directory).entrySet()) {
+            if (source.getKey().getYear() == year) {
+                futures.add(CompletableFuture.supplyAsync(() -> new Month(HistoryBackfill.load(source.getKey(), source.getValue()))));
+            }
+        }
+        if (futures.isEmpty()) {
+            throw new IllegalStateException("There is no schedule of " + year + " in " + directory.toAbsolutePath());
+        }
+        List<Month> months = new ArrayList<>();
+        try {
+            for (CompletableFuture<Month> future : futures) {
+                months.add(future.join());
+            }
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof UncheckedIOException) {
+                throw ((UncheckedIOException) e.getCause()).getCause();
+            }
+            throw e;
+        }
+
+        SXSSFWorkbook workbook = new SXSSFWorkbook(ExcelExporter.ROW_WINDOW);
+        CellStylePalette palette = new CellStylePalette(workbook);
+        boolean liveFormulas = Globals.getInstance().isExcelFormulas();
+        Map<String, Map<String, Integer>> sums = new HashMap<>();
+        for (Month month : months) {
+            Sheet sheet = workbook.createSheet(month.snapshot.getDate().getMonth().name());
+            ExcelExporter.writeMonthSheet(sheet, palette, month.snapshot, month.statistics, sums, liveFormulas);
+            for (String name : month.statistics.getNames()) {
+                Map<String, Integer> personSums = sums.computeIfAbsent(name, k -> new HashMap<>());
+                month.statistics.getCategories(name).forEach((type, value) -> personSums.merge(type, value, Integer::sum));
+            }
+        }
+        writeSummarySheet(workbook.createSheet("Year Summary"), palette, months, sums);
+
+        Path path = directory.resolve("schedule-" + year + ".xlsx");
+        ExcelExporter.write(workbook, path);
+        LOGGER.info(path + " was written with " + months.size() + " months.");
+        return path;
+    }
+
+    private void writeSummarySheet(Sheet sheet, CellStylePalette palette, List<Month> months,
+                                   Map<String, Map<String, Integer>> sums) {
+        CellStyle headerCellStyle = palette.get(IndexedColors.BLACK, IndexedColors.WHITE);
+        CellStyle topLeftCellStyle = palette.get(IndexedColors.BLACK1, FillPatternType.DIAMONDS);
+        CellStyle sumCellStyle = palette.get(IndexedColors.CORAL);
+        CellStyle greenCellStyle = palette.get(IndexedColors.LIGHT_GREEN);
+        CellStyle aquaCellStyle = palette.get(IndexedColors.AQUA);
+
+        int rowNum = 0;
+        int colNum = 0;
+        Row row = sheet.createRow(rowNum++);
+        Cell cell = row.createCell(colNum++);
+        cell.setCellValue(year);
+        cell.setCellStyle(topLeftCellStyle);
+        sheet.setColumnWidth(0, 18 * 256);
+        for (Month month : months) {
+            cell = row.createCell(colNum++);
+            cell.setCellValue(month.snapshot.getDate().getMonth().name().substring(0, 3));
+            cell.setCellStyle(headerCellStyle);
+        }
+        for (String header : TOTAL_HEADERS) {
+            cell = row.createCell(colNum++);
+            cell.setCellValue(header);
+            cell.setCellStyle(headerCellStyle);
+        }
+
+        double[] totals = new double[months.size() + TOTAL_HEADERS.length];
+        for (String name : new TreeSet<>(sums.keySet())) {
+            row = sheet.createRow(rowNum++);
+            CellStyle rowStyle = (rowNum & 1) == 0 ? greenCellStyle : aquaCellStyle;
+            colNum = 0;
+            cell = row.createCell(colNum++);
+            cell.setCellValue(name);
+            cell.setCellStyle(rowStyle);
+            YearToDate yearToDate = new YearToDate(sums.get(name), Map.of());
+            double[] values = new double[totals.length];
+            for (int i = 0; i < months.size(); i++) {
+                MonthStatistics statistics = months.get(i).statistics;
+                values[i] = statistics.contains(name) ? statistics.get(name, MonthStatistics.Counter.ALL) : 0;
+            }
+            int i = months.size();
+            values[i++] = yearToDate.getMonToThu();
+            values[i++] = yearToDate.getFr();
+            values[i++] = yearToDate.getSa();
+            values[i++] = yearToDate.getSu();
+            values[i++] = yearToDate.getWeekend();
+            values[i++] = yearToDate.getNh();
+            values[i++] = yearToDate.getAll();
+            values[i++] = yearToDate.getWeekendStandby();
+            values[i++] = yearToDate.getWeekdayStandby();
+            values[i] = yearToDate.getStandby();
+            for (i = 0; i < values.length; i++) {
+                totals[i] += values[i];
+                colNum = writeValue(row, colNum, rowStyle, values[i]);
+            }
+        }
+
+        row = sheet.createRow(rowNum);
+        colNum = 1;
+        for (double total : totals) {
+            colNum = writeValue(row, colNum, sumCellStyle, total);
+        }
+    }
+
+    private static int writeValue(Row row, int colNum, CellStyle cellStyle, double value) {
+        Cell cell = row.createCell(colNum++, CellType.NUMERIC);
+        cell.setCellValue(Math.round(value * 100) / 100.0);
+        cell.setCellStyle(cellStyle);
+        return colNum;
+    }
+
+    private static class Month {
+        private final ScheduleSnapshot snapshot;
+        private final MonthStatistics statistics;
+
+        private Month(ScheduleSnapshot snapshot) {
+            this.snapshot = snapshot;
+            this.statistics = new MonthStatistics(snapshot);
+        }
+    }
+}
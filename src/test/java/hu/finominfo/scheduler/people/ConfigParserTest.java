@@ -0,0 +1,165 @@
+package hu.finominfo.scheduler.people;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.util.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ConfigParserTest {
+
+    private static final Set<String> NAMES = Set.of("Al Bo", "Ce", "Di");
+
+    @TempDir
+    Path directory;
+
+    private static PersonConfig parseOne(String content) {
+        List<PersonConfig> configs = ConfigParser.parse("config.csv", content, NAMES);
+        assertEquals(1, configs.size());
+        return configs.get(0);
+    }
+
+    private static long days(int from, int to) {
+        long mask = 0;
+        for (int day = from; day <= to; day++) {
+            mask |= 1L << day;
+        }
+        return mask;
+    }
+
+    @Test
+    void parsesDaysAndRanges() {
+        PersonConfig config = parseOne("Ce, h3-5, h9 w12-13 f20 b21-22");
+        assertEquals(days(3, 5) | days(9, 9), config.getHated());
+        assertEquals(days(12, 13), config.getWanted());
+        assertEquals(days(20, 20), config.getFoOnly());
+        assertEquals(days(21, 22), config.getBoOnly());
+    }
+
+    @Test
+    void reversedRangeIsEmpty() {
+        assertEquals(0L, parseOne("Ce h5-3").getHated());
+    }
+
+    @Test
+    void parsesKeywordsAndNumbers() {
+        PersonConfig config = parseOne("Al_Bo nofo hend u1 p2 s3 v4 -2 r2 m2-7");
+        assertEquals("Al Bo", config.getName());
+        assertTrue(config.is(PersonConfig.NOFO));
+        assertTrue(config.is(PersonConfig.HATES_WEEKENDS));
+        assertFalse(config.is(PersonConfig.HATES_MONDAYS));
+        assertEquals(-1L, config.getBoOnly());
+        assertEquals(1, config.getWantedHolidays());
+        assertEquals(2, config.getWantedFridays());
+        assertEquals(3, config.getWantedSaturdays());
+        assertEquals(4, config.getWantedSundays());
+        assertEquals(-2, config.getManualDayDifference());
+        assertEquals(2, config.getMinRest());
+        assertEquals(2, config.getMaxDuties());
+        assertEquals(7, config.getDutyWindow());
+    }
+
+    @Test
+    void reportsWantedAndHatedDayWithPlace() {
+        ConfigParseException e = assertThrows(ConfigParseException.class,
+                () -> ConfigParser.parse("config.csv", "Di\nCe w3 h2-4\n", NAMES));
+        assertEquals("config.csv", e.getSource());
+        assertEquals(2, e.getLine());
+        assertEquals(7, e.getColumn());
+        assertTrue(e.getMessage().endsWith("Ce wants and hates the same day: 3"), e.getMessage());
+    }
+
+    @Test
+    void reportsLineAndColumnOfWrongExpression() {
+        ConfigParseException e = assertThrows(ConfigParseException.class,
+                () -> ConfigParser.parse("team.csv", "Ce h1\r\nDi, h2,  x7\n", NAMES));
+        assertEquals(2, e.getLine());
+        assertEquals(10, e.getColumn());
+        assertEquals("team.csv:2:10: Unknown expression: x7", e.getMessage());
+    }
+
+    @Test
+    void reportsWrongDays() {
+        assertEquals(5, assertThrows(ConfigParseException.class, () -> parseOne("Ce h0")).getColumn());
+        assertEquals(7, assertThrows(ConfigParseException.class, () -> parseOne("Ce h3-x")).getColumn());
+        assertThrows(ConfigParseException.class, () -> parseOne("Ce h64"));
+        assertThrows(ConfigParseException.class, () -> parseOne("Ce m2"));
+        assertThrows(ConfigParseException.class, () -> parseOne("Ce m40-7"));
+    }
+
+    @Test
+    void newPersonOnlyWithCommand() {
+        ConfigParseException e = assertThrows(ConfigParseException.class, () -> parseOne("Ed h3"));
+        assertEquals(1, e.getColumn());
+        PersonConfig config = parseOne("Ed newperson h3");
+        assertEquals("Ed", config.getName());
+        assertEquals(days(3, 3), config.getHated());
+    }
+
+    @Test
+    void changesAreAddedToCopyOfBase() {
+        PersonConfig base = parseOne("Ce h3");
+        PersonConfig changed = ConfigParser.parse("changes", "Ce w10", NAMES, Map.of("Ce", base)).get(0);
+        assertEquals(days(3, 3), changed.getHated());
+        assertEquals(days(10, 10), changed.getWanted());
+        assertEquals(0L, base.getWanted());
+    }
+
+    @Test
+    void parseAllKeepsOrderOfPaths() throws IOException {
+        List<Path> paths = new ArrayList<>();
+        for (int i = 0; i < 8; i++) {
+            paths.add(write("team" + i + ".csv", "Ce h" + (i + 1) + "\n"));
+        }
+        Map<Path, List<PersonConfig>> configs = ConfigParser.parseAll(paths, NAMES);
+        assertEquals(paths, new ArrayList<>(configs.keySet()));
+        for (int i = 0; i < 8; i++) {
+            assertEquals(days(i + 1, i + 1), configs.get(paths.get(i)).get(0).getHated());
+        }
+    }
+
+    @Test
+    void parseAllUsesNamesOfEveryPath() throws IOException {
+        Map<Path, Set<String>> namesOfPaths = new LinkedHashMap<>();
+        namesOfPaths.put(write("first.csv", "Ce w1\n"), Set.of("Ce"));
+        namesOfPaths.put(write("second.csv", "Ed w2\n"), Set.of("Ed"));
+        Map<Path, List<PersonConfig>> configs = ConfigParser.parseAll(namesOfPaths);
+        assertEquals(new ArrayList<>(namesOfPaths.keySet()), new ArrayList<>(configs.keySet()));
+        assertEquals("Ed", configs.get(directory.resolve("second.csv")).get(0).getName());
+
+        namesOfPaths.put(directory.resolve("second.csv"), Set.of("Ce"));
+        assertThrows(ConfigParseException.class, () -> ConfigParser.parseAll(namesOfPaths));
+    }
+
+    @Test
+    void parseAllThrowsIOExceptionOfMissingFile() throws IOException {
+        for (int run = 0; run < 50; run++) {
+            List<Path> paths = new ArrayList<>();
+            for (int i = 0; i < 16; i++) {
+                paths.add(i % 5 == 3 ? directory.resolve("missing" + i + ".csv") : write("ok" + i + ".csv", "Di w1\n"));
+            }
+            assertThrows(NoSuchFileException.class, () -> ConfigParser.parseAll(paths, NAMES));
+        }
+    }
+
+    @Test
+    void parseAllThrowsParseErrorOfFile() throws IOException {
+        List<Path> paths = new ArrayList<>();
+        for (int i = 0; i < 16; i++) {
+            paths.add(write("team" + i + ".csv", i == 11 ? "Di\nCe q1\n" : "Ce w1\n"));
+        }
+        ConfigParseException e = assertThrows(ConfigParseException.class, () -> ConfigParser.parseAll(paths, NAMES));
+        assertEquals(paths.get(11).toString(), e.getSource());
+        assertEquals(2, e.getLine());
+    }
+
+    private Path write(String name, String content) throws IOException {
+        return Files.write(directory.resolve(name), content.getBytes(StandardCharsets.UTF_8));
+    }
+}
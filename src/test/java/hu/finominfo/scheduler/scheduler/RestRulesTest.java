@@ -0,0 +1,97 @@
+package hu.finominfo.scheduler.scheduler;
+
+import hu.finominfo.scheduler.people.Person;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class RestRulesTest {
+
+    private static RestRules rules(Person... persons) {
+        return new RestRules(List.of(persons));
+    }
+
+    @Test
+    void weekdayRestKeepsTheNeighboursFree() {
+        RestRules rules = rules(new Person("Ce"));
+        rules.assign("Ce", 10);
+        assertFalse(rules.allows("Ce", 9, RestRules.WEEKDAY_REST));
+        assertFalse(rules.allows("Ce", 11, RestRules.WEEKDAY_REST));
+        assertTrue(rules.allows("Ce", 8, RestRules.WEEKDAY_REST));
+        assertTrue(rules.allows("Ce", 12, RestRules.WEEKDAY_REST));
+        assertTrue(rules.allows("Ce", 11, RestRules.NO_REST));
+    }
+
+    @Test
+    void weekendRestKeepsTheDayBeforeAndTwoDaysAfterFree() {
+        RestRules rules = rules(new Person("Ce"));
+        rules.assign("Ce", 10);
+        // a duty the day before the weekend day, or two days after it
+        assertFalse(rules.allows("Ce", 11, RestRules.WEEKEND_REST));
+        assertFalse(rules.allows("Ce", 8, RestRules.WEEKEND_REST));
+        assertTrue(rules.allows("Ce", 9, RestRules.WEEKEND_REST));
+        assertTrue(rules.allows("Ce", 12, RestRules.WEEKEND_REST));
+    }
+
+    @Test
+    void unassignClearsTheDay() {
+        RestRules rules = rules(new Person("Ce"));
+        rules.assign("Ce", 10);
+        rules.assign("Ce", 20);
+        assertEquals(2, rules.getNumOfDuties("Ce"));
+        rules.unassign("Ce", 10);
+        assertEquals(1, rules.getNumOfDuties("Ce"));
+        assertTrue(rules.allows("Ce", 11, RestRules.WEEKDAY_REST));
+    }
+
+    @Test
+    void daysOfThePreviousMonthCount() {
+        RestRules rules = rules(new Person("Ce"));
+        rules.assign("Ce", 0);
+        assertFalse(rules.allows("Ce", 1, RestRules.WEEKDAY_REST));
+        assertTrue(rules.allows("Ce", 2, RestRules.WEEKDAY_REST));
+    }
+
+    @Test
+    void minRestOfTheConfig() {
+        Person person = new Person("Ce");
+        person.setMinRest(2);
+        RestRules rules = rules(person, new Person("Di"));
+        rules.assign("Ce", 10);
+        rules.assign("Di", 10);
+        assertFalse(rules.allows("Ce", 8, RestRules.NO_REST));
+        assertFalse(rules.allows("Ce", 12, RestRules.NO_REST));
+        assertTrue(rules.allows("Ce", 7, RestRules.NO_REST));
+        assertTrue(rules.allows("Ce", 13, RestRules.NO_REST));
+        assertTrue(rules.allows("Di", 12, RestRules.NO_REST));
+    }
+
+    @Test
+    void maxDutiesInAnyWindow() {
+        Person person = new Person("Ce");
+        person.setMaxDuties(2, 7);
+        RestRules rules = rules(person);
+        rules.assign("Ce", 1);
+        rules.assign("Ce", 5);
+        // 1, 5 and 7 are in the days 1-7
+        assertFalse(rules.allows("Ce", 7, RestRules.NO_REST));
+        assertFalse(rules.allows("Ce", 3, RestRules.NO_REST));
+        // the days 2-8 have 5 and 8 only
+        assertTrue(rules.allows("Ce", 8, RestRules.NO_REST));
+        rules.unassign("Ce", 1);
+        assertTrue(rules.allows("Ce", 7, RestRules.NO_REST));
+    }
+
+    @Test
+    void penaltiesOfTheNearDuties() {
+        RestRules rules = rules(new Person("Ce"));
+        rules.assign("Ce", 10);
+        assertEquals(2, rules.getPenalty("Ce", 12, RestRules.WEEKDAY_PENALTIES));
+        assertEquals(1, rules.getPenalty("Ce", 13, RestRules.WEEKDAY_PENALTIES));
+        assertEquals(0, rules.getPenalty("Ce", 14, RestRules.WEEKDAY_PENALTIES));
+        assertEquals(1000, rules.getPenalty("Ce", 17, RestRules.WEEKEND_PENALTIES));
+        assertEquals(1000, rules.getPenalty("Ce", 3, RestRules.WEEKEND_PENALTIES));
+    }
+}
@@ -0,0 +1,76 @@
+package hu.finominfo.scheduler.scheduler;
+
+import hu.finominfo.scheduler.people.Person;
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDate;
+import java.util.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ScheduleValidatorTest {
+
+    private static final LocalDate MONTH = LocalDate.of(2024, 5, 1);
+
+    private static Map<Integer, Set<String>> scheduled(String name, int... days) {
+        Map<Integer, Set<String>> scheduled = new HashMap<>();
+        for (int day : days) {
+            scheduled.put(day, Set.of(name));
+        }
+        return scheduled;
+    }
+
+    private static List<Integer> daysOf(List<ScheduleValidator.Violation> violations, ScheduleValidator.Rule rule) {
+        List<Integer> days = new ArrayList<>();
+        for (ScheduleValidator.Violation violation : violations) {
+            if (violation.getRule() == rule) {
+                days.add(violation.getDay());
+            }
+        }
+        return days;
+    }
+
+    private static Person restingPerson() {
+        Person person = new Person("Ce");
+        person.setMinRest(2);
+        person.setMaxDuties(2, 7);
+        return person;
+    }
+
+    @Test
+    void minRestIsReportedOnTheLaterDuty() {
+        ScheduleValidator validator = ScheduleValidator.of(MONTH, List.of(restingPerson()));
+        List<ScheduleValidator.Violation> violations = validator.validate(scheduled("Ce", 3, 5, 20), Map.of());
+        assertEquals(List.of(5), daysOf(violations, ScheduleValidator.Rule.MIN_REST));
+        assertTrue(ScheduleValidator.hasHard(violations));
+    }
+
+    @Test
+    void maxDutiesIsReportedOnTheLastDutyOfTheWindow() {
+        ScheduleValidator validator = ScheduleValidator.of(MONTH, List.of(restingPerson()));
+        List<ScheduleValidator.Violation> violations = validator.validate(scheduled("Ce", 1, 4, 7, 20), Map.of());
+        assertEquals(List.of(7), daysOf(violations, ScheduleValidator.Rule.MAX_DUTIES));
+        assertEquals(List.of(), daysOf(violations, ScheduleValidator.Rule.MIN_REST));
+    }
+
+    @Test
+    void noRuleWithoutConfig() {
+        ScheduleValidator validator = ScheduleValidator.of(MONTH, List.of(new Person("Ce")));
+        List<ScheduleValidator.Violation> violations = validator.validate(scheduled("Ce", 1, 3, 5, 7), Map.of());
+        assertEquals(List.of(), daysOf(violations, ScheduleValidator.Rule.MIN_REST));
+        assertEquals(List.of(), daysOf(violations, ScheduleValidator.Rule.MAX_DUTIES));
+    }
+
+    @Test
+    void snapshotKeepsTheRules() throws Exception {
+        ScheduleSnapshot snapshot = ScheduleSnapshot.create(MONTH, scheduled("Ce", 3, 5), Map.of(),
+                List.of(restingPerson(), new Person("Di")));
+        ScheduleSnapshot read = ScheduleSnapshot.read(snapshot.toBytes());
+        assertEquals(2, read.getMinRest("Ce"));
+        assertEquals(2, read.getMaxDuties("Ce"));
+        assertEquals(7, read.getDutyWindow("Ce"));
+        assertEquals(0, read.getMinRest("Di"));
+        List<ScheduleValidator.Violation> violations = ScheduleValidator.of(read).validate(read);
+        assertEquals(List.of(5), daysOf(violations, ScheduleValidator.Rule.MIN_REST));
+    }
+}
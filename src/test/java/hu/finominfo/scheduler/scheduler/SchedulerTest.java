@@ -0,0 +1,85 @@
+package hu.finominfo.scheduler.scheduler;
+
+import hu.finominfo.scheduler.people.ConfigParser;
+import hu.finominfo.scheduler.people.Person;
+import hu.finominfo.scheduler.people.PersonConfig;
+import org.junit.jupiter.api.Test;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.time.LocalDate;
+import java.util.*;
+import java.util.zip.CRC32;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.junit.jupiter.api.Assertions.*;
+
+public class SchedulerTest {
+
+    private static final Set<String> NAMES = Set.of("Al Bo", "Ce", "Di", "Ed", "Fa", "Gu", "Ha", "Ib");
+    private static final String CONFIG = "Al_Bo\nCe hend\nDi h3-9\nEd nofo\nFa p2\nGu w12\nHa +2\nIb s1\n";
+
+    private static Scheduler solve(String config, int month, long seed) {
+        Map<String, Person> people = new HashMap<>();
+        for (PersonConfig personConfig : ConfigParser.parse("config.csv", config, NAMES)) {
+            people.put(personConfig.getName(), personConfig.toPerson());
+        }
+        return new Scheduler(people, LocalDate.of(2024, month, 1), seed);
+    }
+
+    private static List<Integer> daysOf(Scheduler scheduler, String name) {
+        List<Integer> days = new ArrayList<>();
+        for (int day = 1; day <= scheduler.getNumOfDays(); day++) {
+            if (scheduler.getScheduled().get(day).contains(name)) {
+                days.add(day);
+            }
+        }
+        return days;
+    }
+
+    /**
+     * The assignments of 480 seeded months, as the Scheduler made them before the rules moved into RestRules.
+     * The IMS1 roles are not compared: they are balanced over a HashSet of the people, in identity hash order.
+     */
+    @Test
+    void seededMonthsSolveTheSame() throws IOException {
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(
+                SchedulerTest.class.getResourceAsStream("seeded-months.txt"), UTF_8))) {
+            int months = 0;
+            for (String line = reader.readLine(); line != null; line = reader.readLine()) {
+                String[] split = line.split(" ");
+                int month = Integer.parseInt(split[0]);
+                long seed = Long.parseLong(split[1]);
+                Scheduler scheduler = solve(CONFIG, month, seed);
+                StringBuilder assignments = new StringBuilder();
+                for (int day = 1; day <= scheduler.getNumOfDays(); day++) {
+                    assignments.append(day).append(':').append(new TreeSet<>(scheduler.getScheduled().get(day))).append(';');
+                }
+                CRC32 crc = new CRC32();
+                crc.update(assignments.toString().getBytes(UTF_8));
+                assertEquals(split[2], Long.toHexString(crc.getValue()), "2024-" + month + " with seed " + seed);
+                months++;
+            }
+            assertEquals(480, months);
+        }
+    }
+
+    @Test
+    void restAndLimitOfTheConfigAreKept() {
+        for (int month = 1; month <= 12; month++) {
+            for (long seed = 0; seed < 10; seed++) {
+                Scheduler scheduler = solve(CONFIG.replace("Al_Bo\n", "Al_Bo r3 m2-10\n"), month, seed);
+                List<Integer> days = daysOf(scheduler, "Al Bo");
+                for (int i = 1; i < days.size(); i++) {
+                    assertTrue(days.get(i) - days.get(i - 1) > 3, "rest of " + days);
+                }
+                for (int start = 1; start <= scheduler.getNumOfDays(); start++) {
+                    int first = start;
+                    assertTrue(days.stream().filter(day -> day >= first && day < first + 10).count() <= 2,
+                            "limit of " + days);
+                }
+            }
+        }
+    }
+}